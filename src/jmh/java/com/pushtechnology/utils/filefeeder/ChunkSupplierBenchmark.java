@@ -0,0 +1,62 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a ChunkSupplier from a newline-delimited file, and taking random
+ * records from it as the cache replay does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChunkSupplierBenchmark {
+
+    @Param({"1000", "100000"})
+    int records;
+
+    @Param({"100"})
+    int recordSize;
+
+    private Path file;
+    private ChunkSupplier supplier;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] record = new byte[recordSize];
+        Arrays.fill(record, (byte) 'x');
+        record[recordSize - 1] = '\n';
+
+        byte[] content = new byte[records * recordSize];
+        for(int i = 0; i < records; i++) {
+            System.arraycopy(record, 0, content, i * recordSize, recordSize);
+        }
+
+        file = Files.createTempFile("chunks", ".txt");
+        Files.write(file, content);
+        supplier = new ChunkSupplier(new MappedRecordReader(file));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Map the file and index its records.
+     */
+    @Benchmark
+    public ChunkSupplier construct() throws IOException {
+        return new ChunkSupplier(new MappedRecordReader(file));
+    }
+
+    @Benchmark
+    public byte[] getRandom() {
+        return supplier.getRandom();
+    }
+}
@@ -0,0 +1,74 @@
+package com.pushtechnology.utils.filefeeder;
+
+import com.pushtechnology.diffusion.client.Diffusion;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The per-update work in Main before an update is sent: decoding file
+ * content as the configured topic type, and mapping a file's path to its
+ * topic name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecodeBenchmark {
+
+    @Param({"string", "json", "binary", "double", "int64"})
+    String type;
+
+    private Path root;
+    private Path file;
+    private Main main;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("files");
+        file = root.resolve("a/b/c/topic.json");
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+
+        main = new Main(Main.createParser().parse(
+                "--type", type,
+                "--file", root.toString(),
+                "--stripSuffix",
+                "--publisher", "null"));
+
+        switch(type) {
+            case "double":
+                bytes = Diffusion.dataTypes().doubleFloat().toBytes(1234.5678).toByteArray();
+                break;
+            case "int64":
+                bytes = Diffusion.dataTypes().int64().toBytes(12345678L).toByteArray();
+                break;
+            default:
+                bytes = "{\"name\":\"feeder\",\"values\":[1,2,3,4,5],\"nested\":{\"flag\":true}}".getBytes();
+                break;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        main.stop();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Object decode() {
+        return main.decode("a/b/c/topic", bytes);
+    }
+
+    @Benchmark
+    public String pathToTopicName() throws IOException {
+        return main.pathToTopicName(file);
+    }
+}
@@ -0,0 +1,71 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of logging on the publish path, from several threads at once:
+ * per-update debug messages when they are disabled ("info") and enabled
+ * ("debug"), against writing each message straight to a PrintStream as the
+ * feeder used to.
+ *
+ * Output goes to an unbuffered file, so each message is a blocking write as
+ * it would be to the console. The log writer's queue soon fills, so with
+ * "debug" the logging threads mostly measure queueing and then dropping
+ * messages, while println measures the write itself. The number of messages
+ * dropped is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class LoggingBenchmark {
+
+    private static final Log LOG = Log.get("update");
+
+    @Param({"info", "debug"})
+    String level;
+
+    private Path file;
+    private PrintStream console;
+    private long dropped;
+    private final String topic = "a/b/c/topic";
+    private final int size = 42;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("logging", ".log");
+        console = new PrintStream(new FileOutputStream(file.toFile()), false);
+        Log.writer().setOutput(console, console);
+        Log.configure(level, 0);
+        dropped = Log.getDropped();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Log.flush();
+        System.out.println("Dropped " + (Log.getDropped() - dropped) + " messages");
+        Log.writer().setOutput(System.out, System.err);
+        Log.configure("info", 0);
+        console.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void log() {
+        LOG.debug(() -> "Sent " + size + " bytes to " + topic);
+    }
+
+    @Benchmark
+    public void println() {
+        if (level.equals("debug")) {
+            console.println("Sent " + size + " bytes to " + topic);
+        }
+    }
+}
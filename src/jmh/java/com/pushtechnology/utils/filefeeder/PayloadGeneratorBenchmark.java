@@ -0,0 +1,37 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generating values from a JSON template with --generate, padded to
+ * different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayloadGeneratorBenchmark {
+
+    private static final String TEMPLATE =
+            "{\"symbol\":\"ABC\",\"bid\":101.25,\"ask\":101.50,\"size\":300,\"venue\":\"XLON\",\"open\":true}";
+
+    @Param({"0", "1000", "10000"})
+    int payloadSize;
+
+    @Param({"1", "4"})
+    int mutations;
+
+    private PayloadGenerator generator;
+
+    @Setup
+    public void setup() {
+        generator = new PayloadGenerator(TEMPLATE.getBytes(StandardCharsets.UTF_8), mutations, payloadSize, 1);
+    }
+
+    @Benchmark
+    public byte[] next() {
+        return generator.next();
+    }
+}
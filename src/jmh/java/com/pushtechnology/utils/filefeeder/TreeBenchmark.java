@@ -0,0 +1,100 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tree operations used when caching files and replaying from the cache,
+ * against trees shaped like a topic hierarchy: three levels of branches
+ * above the leaves, with {@code fanout} children each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TreeBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"100"})
+    int fanout;
+
+    private Tree<String> tree;
+    private String[] paths;
+    private Tree<String>.TreeNode<String>[] nodes;
+    private int next;
+    private final Random random = new Random(42);
+
+    static String pathOf(int i, int fanout) {
+        return (i / fanout / fanout / fanout) + "/" + (i / fanout / fanout % fanout) + "/"
+                + (i / fanout % fanout) + "/" + (i % fanout);
+    }
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        tree = new Tree<>();
+        paths = new String[size];
+        nodes = new Tree.TreeNode[size];
+        for(int i = 0; i < size; i++) {
+            paths[i] = pathOf(i, fanout);
+            nodes[i] = tree.add(paths[i], paths[i]);
+        }
+
+        // Visit nodes in random order, so the benchmarks aren't helped by locality
+        Random random = new Random(42);
+        for(int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String path = paths[i];
+            paths[i] = paths[j];
+            paths[j] = path;
+            Tree<String>.TreeNode<String> node = nodes[i];
+            nodes[i] = nodes[j];
+            nodes[j] = node;
+        }
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == size ? 0 : i + 1;
+        return i;
+    }
+
+    /**
+     * Replace the data of an existing node, as when a cached file is read
+     * again.
+     */
+    @Benchmark
+    public Tree<String>.TreeNode<String> add() {
+        String path = paths[next()];
+        return tree.add(path, path);
+    }
+
+    @Benchmark
+    public Tree<String>.TreeNode<String> get() {
+        return tree.get(paths[next()]);
+    }
+
+    @Benchmark
+    public List<Tree<String>.TreeNode<String>> getSiblings() {
+        return tree.getSiblings(nodes[next()]);
+    }
+
+    @Benchmark
+    public List<Tree<String>.TreeNode<String>> getNodesWithData() {
+        return tree.getNodesWithData();
+    }
+
+    @Benchmark
+    public String getFullName() {
+        return tree.getFullName(nodes[next()]);
+    }
+
+    @Benchmark
+    public Tree<String>.TreeNode<String> getRandomSibling() {
+        return tree.getRandomSibling(nodes[next()], random);
+    }
+}
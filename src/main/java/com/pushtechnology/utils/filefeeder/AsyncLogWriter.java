@@ -0,0 +1,171 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes log messages from a single background thread, taking them from a
+ * bounded ring buffer which any thread can add to without locking.
+ *
+ * Producers claim a slot with a compare-and-set on the tail sequence; each
+ * slot has its own sequence number, which tells the writer when the slot has
+ * been filled and producers when it has been emptied. If the buffer is full
+ * the message is dropped and counted, rather than the producer waiting.
+ * WARN and ERROR messages go to stderr, others to stdout.
+ */
+class AsyncLogWriter {
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    // How long the writer parks when there is nothing to write
+    private static final long IDLE_NANOS = 1_000_000;
+
+    private static final class Entry {
+        final long time;
+        final Log.Level level;
+        final String category;
+        final String message;
+
+        Entry(Log.Level level, String category, String message) {
+            this.time = System.currentTimeMillis();
+            this.level = level;
+            this.category = category;
+            this.message = message;
+        }
+    }
+
+    private final Entry[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Only written by the writer thread
+    private long head = 0;
+    // Messages written so far, for flush()
+    private volatile long written = 0;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile PrintStream out = System.out;
+    private volatile PrintStream err = System.err;
+    private final Thread thread;
+
+    /**
+     * @param capacity the number of messages buffered, rounded up to a
+     *                 power of two
+     */
+    AsyncLogWriter(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new Entry[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+
+        thread = new Thread(this::run, "log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Send output somewhere other than stdout and stderr.
+     */
+    void setOutput(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Add a message to the buffer, or drop it if the buffer is full.
+     */
+    void write(Log.Level level, String category, String message) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = new Entry(level, category, message);
+                    // Publish the entry to the writer
+                    sequences.set(index, position + 1);
+                    return;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0) {
+                // The writer hasn't emptied this slot since the last time round
+                dropped.incrementAndGet();
+                return;
+            }
+            else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private Entry poll() {
+        long position = head;
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        Entry entry = slots[index];
+        slots[index] = null;
+        // Free the slot for the producer one time round the buffer later
+        sequences.set(index, position + slots.length);
+        head = position + 1;
+        return entry;
+    }
+
+    private void run() {
+        long reportedDrops = 0;
+        while (true) {
+            Entry entry = poll();
+            if (entry == null) {
+                out.flush();
+                err.flush();
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    err.println(TIME.format(Instant.now()) + " WARN  log - " + (drops - reportedDrops)
+                            + " messages dropped because logging could not keep up");
+                    reportedDrops = drops;
+                }
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+
+            PrintStream stream = entry.level.compareTo(Log.Level.WARN) <= 0 ? err : out;
+            stream.print(TIME.format(Instant.ofEpochMilli(entry.time)));
+            stream.print(' ');
+            stream.print(entry.level);
+            stream.print(entry.level.name().length() == 4 ? "  " : " ");
+            stream.print(entry.category);
+            stream.print(" - ");
+            stream.println(entry.message);
+            written++;
+        }
+    }
+
+    /**
+     * Wait until every message added so far has been written, for up to a
+     * second.
+     */
+    void flush() {
+        long target = tail.get();
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        while (written < target && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        out.flush();
+        err.flush();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+}
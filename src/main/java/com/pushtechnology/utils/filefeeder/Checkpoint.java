@@ -0,0 +1,269 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Records how far each file has been published, so that a restarted feeder
+ * can carry on where it left off.
+ *
+ * For each file, the checkpoint holds a byte offset: everything before it has
+ * been acknowledged. For a newline-delimited file this is the start of the
+ * first record not yet acknowledged; for a file published whole, it is the
+ * length of the file once its update has been acknowledged.
+ *
+ * Offsets only advance when updates are acknowledged. A record whose update
+ * fails stays pending, so the offset stays before it and it is published
+ * again after a restart. The file is rewritten periodically rather than on
+ * every acknowledgement. It is written to a temporary file which then
+ * replaces the original, so a crash leaves either the old checkpoint or the
+ * new one. Records acknowledged since the last write are published again
+ * after a restart.
+ *
+ * The file has one line per file: the offset, a tab, then the absolute path.
+ */
+class Checkpoint {
+
+    private static final Log LOG = Log.get("checkpoint");
+
+    private final Path file;
+    private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+    private final Map<String, Progress> progress = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Load the checkpoint file, if it exists, and write it every
+     * {@code interval} milliseconds while there are changes.
+     */
+    Checkpoint(Path file, long interval) throws IOException {
+        this.file = file;
+
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab <= 0) {
+                        continue;
+                    }
+                    try {
+                        offsets.put(line.substring(tab + 1), Long.parseLong(line.substring(0, tab)));
+                    }
+                    catch (NumberFormatException ex) {
+                        LOG.warn("Ignoring invalid checkpoint entry: " + line);
+                    }
+                }
+            }
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, interval);
+        executor.scheduleWithFixedDelay(this::flush, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * @return the number of files in the checkpoint
+     */
+    int size() {
+        return offsets.size();
+    }
+
+    /**
+     * @return where to resume reading a newline-delimited file; zero if the
+     * file isn't in the checkpoint or is now shorter than the saved offset
+     */
+    long getOffset(Path path) {
+        return getOffset(path, path.toFile().length());
+    }
+
+    /**
+     * @param length the length of the file's content, for content such as a
+     *               compressed file's where that is not the file's length
+     */
+    long getOffset(Path path, long length) {
+        Long offset = offsets.get(key(path));
+        if (offset == null || offset > length) {
+            return 0;
+        }
+        return offset;
+    }
+
+    /**
+     * @return true if a file published whole has been acknowledged, and has
+     * the same length now
+     */
+    boolean isComplete(Path path) {
+        return isComplete(path, path.toFile().length());
+    }
+
+    /**
+     * @param length the length of the file's content, for content such as a
+     *               compressed file's where that is not the file's length
+     */
+    boolean isComplete(Path path, long length) {
+        Long offset = offsets.get(key(path));
+        return offset != null && offset > 0 && offset == length;
+    }
+
+    /**
+     * @return the tracker for updates from a file which is about to be read;
+     * call {@link Progress#read()} once it has been
+     */
+    Progress track(Path path) {
+        return progress.compute(key(path), (key, tracker) -> {
+            tracker = tracker != null ? tracker : new Progress(key);
+            tracker.reading();
+            return tracker;
+        });
+    }
+
+    /**
+     * @return the number of files with a tracker
+     */
+    int tracked() {
+        return progress.size();
+    }
+
+    /**
+     * Tracks the records sent from one file which have not yet been
+     * acknowledged. Once the file has been read and all of them have been
+     * acknowledged, the tracker is dropped, so that files which come and
+     * go under --watch don't each keep one.
+     */
+    final class Progress {
+        private final String key;
+
+        // Start offsets of records awaiting acknowledgement, with a count of each
+        private final TreeMap<Long, Integer> pending = new TreeMap<>();
+        private long sentEnd;
+        // Readers of the file which haven't finished
+        private int readers;
+
+        private Progress(String key) {
+            this.key = key;
+        }
+
+        private synchronized void reading() {
+            readers++;
+        }
+
+        private synchronized boolean isIdle() {
+            return readers == 0 && pending.isEmpty();
+        }
+
+        /**
+         * Note that the file has been read, and no more records will be
+         * sent from it through this tracker.
+         */
+        void read() {
+            synchronized (this) {
+                readers--;
+            }
+            release();
+        }
+
+        /**
+         * Drop the tracker, if it is idle. The map is locked before the
+         * tracker, as in {@link #track(Path)}.
+         */
+        private void release() {
+            progress.computeIfPresent(key, (key, tracker) -> tracker == this && isIdle() ? null : tracker);
+        }
+
+        /**
+         * Note that the record between {@code start} and {@code end} is
+         * about to be sent.
+         *
+         * @return to be called with whether the update succeeded, once it
+         * has been acknowledged or has failed
+         */
+        synchronized Consumer<Boolean> sent(long start, long end) {
+            pending.merge(start, 1, Integer::sum);
+            sentEnd = end;
+            return success -> {
+                if (success) {
+                    acknowledged(start);
+                    release();
+                }
+            };
+        }
+
+        private synchronized void acknowledged(long start) {
+            pending.computeIfPresent(start, (offset, count) -> count > 1 ? count - 1 : null);
+            offsets.put(key, pending.isEmpty() ? sentEnd : pending.firstKey());
+            dirty.set(true);
+        }
+    }
+
+    /**
+     * Write the checkpoint, if anything has changed since it was last written.
+     */
+    void flush() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+                    writer.write(Long.toString(entry.getValue()));
+                    writer.write('\t');
+                    writer.write(entry.getKey());
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException ex) {
+            dirty.set(true);
+            LOG.warn("Unable to write checkpoint " + file + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Stop writing periodically, and write any remaining changes.
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
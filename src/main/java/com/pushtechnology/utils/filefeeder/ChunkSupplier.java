@@ -1,41 +1,99 @@
 package com.pushtechnology.utils.filefeeder;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Random;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 class ChunkSupplier implements Supplier<byte[]> {
 
+    private static final Log LOG = Log.get("cache");
+
     private final byte[] src;
-    private final boolean split;
+    private final Records records;
 
-    private final ArrayList<String> lines = new ArrayList<>();
+    // When the whole-file content is held off-heap: where it is, and where to re-read it from
+    private final OffHeapStore store;
+    private final int storeId;
+    private final Path path;
 
     private final Random random = new Random();
 
+    // Values decoded from src, or from each record, when first used from the
+    // cache. They are held on the heap, even when the data is held off-heap.
+    private Value value;
+    private Value[] values;
+
     private int idx = 0;
     private boolean end = false;
 
-    public ChunkSupplier(byte[] src, boolean split) {
+    // File offsets of the chunk last returned by get()
+    private long chunkStart;
+    private long chunkEnd;
+
+    /**
+     * Supply the whole of {@code src} as a single chunk.
+     */
+    public ChunkSupplier(byte[] src) {
         this.src = src;
-        this.split = split;
-        System.out.println("++AST: Adding " + src.length + " bytes to cache");
-        if (split) {
-            BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(src)));
-            String line;
+        this.records = null;
+        this.store = null;
+        this.storeId = -1;
+        this.path = null;
+        LOG.debug(() -> "Adding " + src.length + " bytes to cache");
+    }
+
+    /**
+     * Supply each record, from a memory-mapped file or held on the heap, as a
+     * separate chunk.
+     */
+    public ChunkSupplier(Records records) {
+        this.src = null;
+        this.records = records;
+        this.store = null;
+        this.storeId = -1;
+        this.path = null;
+        LOG.debug(() -> "Adding " + records.size() + " records (" + records.length() + " bytes) to cache");
+    }
+
+    /**
+     * Supply the whole of {@code src} as a single chunk, keeping it in an
+     * off-heap store rather than on the heap. If it is evicted from the
+     * store, it is read again from {@code path}.
+     */
+    public ChunkSupplier(byte[] src, OffHeapStore store, Path path) {
+        this.src = null;
+        this.records = null;
+        this.store = store;
+        this.storeId = store.register();
+        this.path = path;
+        if(!store.put(storeId, src)) {
+            LOG.warn("File " + path + " (" + src.length + " bytes) is too large for the cache");
+        }
+    }
+
+    /**
+     * @return the whole content, or null if it is held off-heap, has been
+     * evicted and cannot be read again
+     */
+    private byte[] content() {
+        if(store == null) {
+            return src;
+        }
+
+        byte[] data = store.get(storeId);
+        if(data == null) {
             try {
-                while ((line = in.readLine()) != null) {
-                    lines.add(line);
-                }
+                data = Files.readAllBytes(path);
+                store.put(storeId, data);
             }
             catch(IOException ex) {
-                System.err.println(ex);
+                LOG.warn("Unable to re-read " + path + " after eviction from cache: " + ex.getMessage());
             }
         }
+        return data;
     }
 
     @Override
@@ -43,31 +101,142 @@ class ChunkSupplier implements Supplier<byte[]> {
         if(end) {
             return null;
         }
-        if (split) {
-            String line = lines.get(idx);
+        if (records != null) {
+            if (idx >= records.size()) {
+                end = true;
+                return null;
+            }
+            byte[] record = records.get(idx);
+            chunkStart = records.offset(idx);
+            chunkEnd = records.offset(idx + 1);
             idx++;
-            if (idx >= lines.size()) {
+            if (idx >= records.size()) {
                 end = true;
             }
-            return line.getBytes();
+            return record;
         }
         else {
             end = true;
-            return src;
+            byte[] content = content();
+            chunkStart = 0;
+            chunkEnd = content != null ? content.length : 0;
+            return content;
         }
     }
 
+    /**
+     * @return the file offset of the start of the chunk last returned by
+     * {@link #get()}
+     */
+    long getChunkStart() {
+        return chunkStart;
+    }
+
+    /**
+     * @return the file offset of the end of the chunk last returned by
+     * {@link #get()}, including any line terminator
+     */
+    long getChunkEnd() {
+        return chunkEnd;
+    }
+
+    /**
+     * @return the records supplied, or null if the content is supplied whole
+     */
+    Records getRecords() {
+        return records;
+    }
+
     public byte[] getAll() {
-        return src;
+        return content();
     }
 
     public byte[] getRandom() {
-        if(! split) {
+        if(records == null || records.size() == 0) {
             return null;
         }
 
-        String line = lines.get(random.nextInt(lines.size()));
-        return line.getBytes();
+        return records.get(random.nextInt(records.size()));
+    }
+
+    /**
+     * A decoded topic value, and the size of the data it was decoded from.
+     */
+    static final class Value {
+        // Cached in place of data which can't be decoded, so it isn't decoded again
+        private static final Value INVALID = new Value(null, 0, 0);
+
+        final Object value;
+        final int size;
+        // Of the data, for --skipunchanged
+        final long fingerprint;
+
+        Value(Object value, int size, long fingerprint) {
+            this.value = value;
+            this.size = size;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * @return the whole content, decoded on first use and reused after
+     * that, or null if it cannot be decoded
+     */
+    public Value getValue(Function<byte[], Object> decoder) {
+        return getValue(Function.identity(), decoder);
+    }
+
+    /**
+     * @param prepare applied to the content before it is decoded and
+     *                fingerprinted, such as to remove a timestamp; returns
+     *                null if there is nothing to decode
+     */
+    public Value getValue(Function<byte[], byte[]> prepare, Function<byte[], Object> decoder) {
+        if(value == null && records == null) {
+            byte[] data = content();
+            if(data != null) {
+                value = decode(prepare, decoder, data);
+            }
+        }
+        return value == Value.INVALID ? null : value;
+    }
+
+    /**
+     * @return a random record, decoded on first use and reused after that,
+     * or null if there are no records or the record cannot be decoded
+     */
+    public Value getRandomValue(Function<byte[], Object> decoder) {
+        return getRandomValue(Function.identity(), decoder);
+    }
+
+    /**
+     * @param prepare applied to each record before it is decoded and
+     *                fingerprinted, such as to remove a timestamp; returns
+     *                null if there is nothing to decode
+     */
+    public Value getRandomValue(Function<byte[], byte[]> prepare, Function<byte[], Object> decoder) {
+        if(records == null || records.size() == 0) {
+            return null;
+        }
+        if(values == null) {
+            values = new Value[records.size()];
+        }
+
+        int i = random.nextInt(records.size());
+        if(values[i] == null) {
+            values[i] = decode(prepare, decoder, records.get(i));
+        }
+        return values[i] == Value.INVALID ? null : values[i];
+    }
+
+    /**
+     * The value's size and fingerprint are those of the bytes decoded, so
+     * they match those of the same data published without --cachevalues.
+     */
+    private static Value decode(Function<byte[], byte[]> prepare, Function<byte[], Object> decoder, byte[] bytes) {
+        byte[] data = prepare.apply(bytes);
+        Object decoded = data != null ? decoder.apply(data) : null;
+        return decoded == null ? Value.INVALID : new Value(decoded, data.length, Fingerprints.hash(data));
     }
 
 }
@@ -0,0 +1,175 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reading of compressed files (gzip, raw deflate and zlib) and zip archives,
+ * inflating them as they are read rather than to disk first.
+ *
+ * A zip archive is treated as a directory: each entry is a file, under a
+ * directory named after the archive without its ".zip" suffix.
+ */
+final class CompressedInput {
+
+    private static final Log LOG = Log.get("file");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] COMPRESSED_SUFFIXES = {".gz", ".gzip", ".deflate", ".zz"};
+    static final String ARCHIVE_SUFFIX = ".zip";
+
+    private CompressedInput() {
+    }
+
+    /**
+     * Receives each file in a zip archive.
+     */
+    interface EntryConsumer {
+        /**
+         * @param name the entry's name within the archive
+         * @param in   the entry's content, inflated if it is compressed
+         */
+        void accept(String name, InputStream in) throws IOException;
+    }
+
+    static boolean isArchive(String name) {
+        return name.toLowerCase().endsWith(ARCHIVE_SUFFIX);
+    }
+
+    static boolean isCompressed(String name) {
+        return compressionSuffix(name) != null;
+    }
+
+    private static String compressionSuffix(String name) {
+        String lower = name.toLowerCase();
+        for (String suffix : COMPRESSED_SUFFIXES) {
+            if (lower.endsWith(suffix)) {
+                return suffix;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the name without a compression suffix, e.g. "a/b.json" for
+     * "a/b.json.gz"
+     */
+    static String stripCompression(String name) {
+        String suffix = compressionSuffix(name);
+        return suffix == null ? name : name.substring(0, name.length() - suffix.length());
+    }
+
+    /**
+     * Open a compressed file, inflating it as it is read.
+     */
+    static InputStream open(Path path) throws IOException {
+        return inflate(path.getFileName().toString(), Files.newInputStream(path));
+    }
+
+    /**
+     * @return {@code in}, inflated if {@code name} has a compression suffix
+     */
+    static InputStream inflate(String name, InputStream in) throws IOException {
+        String suffix = compressionSuffix(name);
+        if (suffix == null) {
+            return in;
+        }
+        try {
+            if (suffix.equals(".gz") || suffix.equals(".gzip")) {
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            // .deflate is a raw deflate stream; .zz has a zlib header and checksum
+            return new InflaterInputStream(in, new Inflater(suffix.equals(".deflate")), BUFFER_SIZE);
+        }
+        catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the names of the files in an archive, leaving out directories
+     * and entries which would be outside it
+     */
+    static List<String> entryNames(Path archive) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (isReadable(entry)) {
+                    names.add(entry.getName());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Pass each file in an archive that {@code filter} accepts to
+     * {@code consumer}, inflating entries which are themselves compressed.
+     * Directories and entries which would be outside the archive are left
+     * out.
+     */
+    static void forEachEntry(Path archive, Predicate<String> filter, EntryConsumer consumer) throws IOException {
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!isReadable(entry) || !filter.test(entry.getName())) {
+                    continue;
+                }
+                try (InputStream in = inflate(entry.getName(), zip.getInputStream(entry))) {
+                    consumer.accept(entry.getName(), in);
+                }
+            }
+        }
+    }
+
+    private static boolean isReadable(ZipEntry entry) {
+        if (entry.isDirectory()) {
+            return false;
+        }
+        String name = entry.getName();
+        if (name.startsWith("/") || name.startsWith("../") || name.contains("/../")) {
+            LOG.warn("Ignoring archive entry outside the archive: " + name);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the path of an archive entry as if the archive were a directory
+     * without the ".zip" suffix, e.g. "a/b/c.json" for entry "c.json" in
+     * "a/b.zip"
+     */
+    static String entryPath(String archive, String entry) {
+        return archive.substring(0, archive.length() - ARCHIVE_SUFFIX.length()) + "/" + entry;
+    }
+
+    /**
+     * @return the whole of a stream
+     */
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,223 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Holds the latest value waiting to be sent to each topic, so that a feed
+ * whose values replace each other keeps up when the server falls behind.
+ *
+ * Each topic has a slot for one pending value. Offering a value never
+ * blocks: it replaces any value already waiting in the slot, which is then
+ * counted as conflated and never sent. Drainer threads take slots in the
+ * order they were filled and send their values, waiting for room in the
+ * in-flight window as they do so. Each topic is always drained by the same
+ * thread, so its updates stay in order, and a slot is queued at most once,
+ * so memory is bounded by the number of topics rather than the backlog.
+ */
+class ConflatingQueue {
+
+    private static final Log LOG = Log.get("publisher");
+
+    /**
+     * Sends a value which has been taken from its slot.
+     */
+    interface Sender {
+        /**
+         * @param intended   when the value was due to be sent, on the
+         *                   System.nanoTime() clock
+         * @param onComplete if not null, to be called with whether the update
+         *                   succeeded, once it has been acknowledged or has
+         *                   failed
+         */
+        void send(String topic, Object value, int size, long intended, Consumer<Boolean> onComplete);
+    }
+
+    private static final class Pending {
+        final Object value;
+        final int size;
+        final long intended;
+        final Consumer<Boolean> onComplete;
+
+        Pending(Object value, int size, long intended, Consumer<Boolean> onComplete) {
+            this.value = value;
+            this.size = size;
+            this.intended = intended;
+            this.onComplete = onComplete;
+        }
+    }
+
+    private static final class Slot {
+        final String topic;
+        final BlockingQueue<Slot> ready;
+        final AtomicReference<Pending> pending = new AtomicReference<>();
+
+        Slot(String topic, BlockingQueue<Slot> ready) {
+            this.topic = topic;
+            this.ready = ready;
+        }
+    }
+
+    private final Sender sender;
+    private final ToIntFunction<String> route;
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final List<BlockingQueue<Slot>> queues = new ArrayList<>();
+    private final List<Thread> drainers = new ArrayList<>();
+
+    // Values waiting in slots or being sent
+    private final AtomicLong waiting = new AtomicLong();
+    private final LongAdder conflated = new LongAdder();
+    private volatile boolean stopped = false;
+
+    /**
+     * @param drainers the number of drainer threads
+     * @param route    chooses the drainer for a topic, from zero
+     */
+    ConflatingQueue(int drainers, ToIntFunction<String> route, Sender sender) {
+        this.sender = sender;
+        this.route = route;
+        for (int i = 0; i < Math.max(1, drainers); i++) {
+            BlockingQueue<Slot> queue = new LinkedBlockingQueue<>();
+            queues.add(queue);
+            Thread thread = new Thread(() -> drain(queue), "conflate-" + i);
+            thread.setDaemon(true);
+            this.drainers.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Put a value in its topic's slot, replacing any value still waiting
+     * there. A replaced value's {@code onComplete} is called straight away,
+     * as having succeeded, since a later value has taken its place.
+     */
+    void offer(String topic, Object value, int size, long intended, Consumer<Boolean> onComplete) {
+        Slot slot = slots.get(topic);
+        if (slot == null) {
+            slot = slots.computeIfAbsent(topic, name -> new Slot(name, queues.get(Math.floorMod(route.applyAsInt(name), queues.size()))));
+        }
+
+        Pending previous = slot.pending.getAndSet(new Pending(value, size, intended, onComplete));
+        if (previous == null) {
+            waiting.incrementAndGet();
+            slot.ready.add(slot);
+        }
+        else {
+            conflated.increment();
+            if (previous.onComplete != null) {
+                previous.onComplete.accept(true);
+            }
+        }
+    }
+
+    private void drain(BlockingQueue<Slot> queue) {
+        while (!stopped) {
+            Slot slot;
+            try {
+                slot = queue.take();
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+
+            Pending pending = slot.pending.getAndSet(null);
+            if (pending == null) {
+                continue;
+            }
+            try {
+                sender.send(slot.topic, pending.value, pending.size, pending.intended, pending.onComplete);
+            }
+            catch (RuntimeException ex) {
+                LOG.warn("Unable to update " + slot.topic + ": " + ex.getMessage());
+                if (pending.onComplete != null) {
+                    pending.onComplete.accept(false);
+                }
+            }
+            finally {
+                if (waiting.decrementAndGet() == 0) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until every value offered so far has been sent or conflated.
+     */
+    void awaitEmpty() throws InterruptedException {
+        synchronized (this) {
+            while (waiting.get() > 0 && !stopped) {
+                wait(100);
+            }
+        }
+    }
+
+    /**
+     * Wait until every value offered so far has been sent or conflated, or
+     * until the timeout.
+     *
+     * @return true if no values are waiting
+     */
+    boolean awaitEmpty(long timeout, TimeUnit unit) throws InterruptedException {
+        long end = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            long remaining;
+            while (waiting.get() > 0 && !stopped) {
+                if ((remaining = end - System.nanoTime()) <= 0) {
+                    return false;
+                }
+                wait(Math.max(1, Math.min(100, TimeUnit.NANOSECONDS.toMillis(remaining))));
+            }
+            return waiting.get() == 0;
+        }
+    }
+
+    /**
+     * Stop sending. Values still waiting are discarded.
+     */
+    void stop() {
+        stopped = true;
+        drainers.forEach(Thread::interrupt);
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of values replaced before they were sent
+     */
+    long getConflated() {
+        return conflated.sum();
+    }
+
+    /**
+     * @return the number of values waiting to be sent, or being sent
+     */
+    long getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * @return the number of topics with slots
+     */
+    int getTopicCount() {
+        return slots.size();
+    }
+
+    @Override
+    public String toString() {
+        return "conflation: topics=" + getTopicCount() + " waiting=" + getWaiting() + " conflated=" + getConflated();
+    }
+}
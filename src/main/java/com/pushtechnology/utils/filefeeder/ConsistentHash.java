@@ -0,0 +1,70 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps topic names onto a fixed set of targets using a hash ring, so that a
+ * topic always maps to the same target and adding a target moves only a
+ * small share of topics.
+ *
+ * The hash is computed from the characters of the name and does not depend
+ * on the JVM, so the mapping is the same across processes and hosts.
+ */
+class ConsistentHash<T> {
+
+    private static final int POINTS_PER_TARGET = 128;
+
+    private final long[] points;
+    private final int[] owners;
+    private final List<T> targets;
+
+    ConsistentHash(List<T> targets) {
+        this.targets = targets;
+
+        int n = targets.size() * POINTS_PER_TARGET;
+        long[][] ring = new long[n][];
+        for (int t = 0; t < targets.size(); t++) {
+            for (int p = 0; p < POINTS_PER_TARGET; p++) {
+                ring[t * POINTS_PER_TARGET + p] = new long[] { hash(t + "#" + p), t };
+            }
+        }
+        Arrays.sort(ring, (a, b) -> Long.compare(a[0], b[0]));
+
+        points = new long[n];
+        owners = new int[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = ring[i][0];
+            owners[i] = (int) ring[i][1];
+        }
+    }
+
+    T get(String name) {
+        if (targets.size() == 1) {
+            return targets.get(0);
+        }
+        int i = Arrays.binarySearch(points, hash(name));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return targets.get(owners[i == points.length ? 0 : i]);
+    }
+
+    /**
+     * A stable 64-bit hash of a string: FNV-1a over its characters, with a
+     * final mix to spread similar names across the whole range.
+     */
+    static long hash(String name) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h ^= name.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
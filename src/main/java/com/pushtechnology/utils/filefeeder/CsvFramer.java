@@ -0,0 +1,140 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rows of a CSV file, each converted to a JSON object whose keys are
+ * the names in the header row and whose values are strings.
+ *
+ * Fields may be quoted, with '""' for a quote and line breaks allowed
+ * inside quotes (RFC 4180). Blank lines are skipped. Fields beyond the
+ * header's are named by their column number, counting from one.
+ */
+class CsvFramer extends Framer {
+
+    private byte[][] header;
+
+    // Bytes after the start of the current row already scanned, and whether that ended inside quotes
+    private int scanned = 0;
+    private boolean quoted = false;
+
+    @Override
+    int next(byte[] buffer, int from, int to, boolean eof) {
+        int end = -1;
+        for (int i = from + scanned; i < to; i++) {
+            byte b = buffer[i];
+            if (b == '"') {
+                quoted = !quoted;
+            }
+            else if (b == '\n' && !quoted) {
+                end = i;
+                break;
+            }
+        }
+
+        final int consumed;
+        if (end >= 0) {
+            consumed = end + 1 - from;
+        }
+        else if (eof) {
+            end = to;
+            consumed = to - from;
+        }
+        else {
+            scanned = to - from;
+            return 0;
+        }
+        scanned = 0;
+        quoted = false;
+
+        if (end > from && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (end == from) {
+            record = null;
+            return consumed;
+        }
+
+        List<byte[]> fields = fields(buffer, from, end);
+        if (header == null) {
+            header = fields.toArray(new byte[0][]);
+            record = null;
+        }
+        else {
+            record = toJson(fields);
+        }
+        return consumed;
+    }
+
+    private static List<byte[]> fields(byte[] buffer, int from, int end) {
+        List<byte[]> fields = new ArrayList<>();
+        ByteArrayOutputStream field = new ByteArrayOutputStream();
+        boolean quoted = false;
+        for (int i = from; i < end; i++) {
+            byte b = buffer[i];
+            if (quoted) {
+                if (b != '"') {
+                    field.write(b);
+                }
+                else if (i + 1 < end && buffer[i + 1] == '"') {
+                    field.write('"');
+                    i++;
+                }
+                else {
+                    quoted = false;
+                }
+            }
+            else if (b == '"') {
+                quoted = true;
+            }
+            else if (b == ',') {
+                fields.add(field.toByteArray());
+                field.reset();
+            }
+            else {
+                field.write(b);
+            }
+        }
+        fields.add(field.toByteArray());
+        return fields;
+    }
+
+    private byte[] toJson(List<byte[]> fields) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        json.write('{');
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                json.write(',');
+            }
+            writeString(json, i < header.length
+                    ? header[i]
+                    : Integer.toString(i + 1).getBytes(StandardCharsets.UTF_8));
+            json.write(':');
+            writeString(json, fields.get(i));
+        }
+        json.write('}');
+        return json.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream json, byte[] value) {
+        json.write('"');
+        for (byte b : value) {
+            if (b == '"' || b == '\\') {
+                json.write('\\');
+                json.write(b);
+            }
+            else if (b >= 0 && b < 0x20) {
+                byte[] escape = String.format("\\u%04x", b).getBytes(StandardCharsets.UTF_8);
+                json.write(escape, 0, escape.length);
+            }
+            else {
+                // Multi-byte UTF-8 sequences pass through unchanged
+                json.write(b);
+            }
+        }
+        json.write('"');
+    }
+}
@@ -0,0 +1,129 @@
+package com.pushtechnology.utils.filefeeder;
+
+import com.pushtechnology.diffusion.client.Diffusion;
+import com.pushtechnology.diffusion.client.features.TopicUpdate;
+import com.pushtechnology.diffusion.client.features.UpdateStream;
+import com.pushtechnology.diffusion.client.features.control.topics.TopicControl;
+import com.pushtechnology.diffusion.client.session.Session;
+import com.pushtechnology.diffusion.client.session.SessionFactory;
+import com.pushtechnology.diffusion.client.topics.details.TopicSpecification;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Publishes to a Diffusion server through a single session.
+ */
+class DiffusionPublisher implements Publisher {
+
+    private static final Log LOG = Log.get("session");
+
+    private final int index;
+    private final String url;
+    private final String principal;
+    private final String credentials;
+    private final Class valueClass;
+    private final Function<TopicControl, TopicSpecification> specification;
+
+    private final Map<String, UpdateStream> updateStreams = new ConcurrentHashMap<>();
+
+    private Session session;
+    private TopicControl topicControl;
+    private TopicUpdate topicUpdate;
+    private TopicSpecification topicSpec;
+
+    /**
+     * @param index         identifies the session in log messages
+     * @param valueClass    the class of values sent to topics
+     * @param specification creates the specification for new topics
+     */
+    DiffusionPublisher(int index, String url, String principal, String credentials,
+                       Class valueClass, Function<TopicControl, TopicSpecification> specification) {
+        this.index = index;
+        this.url = url;
+        this.principal = principal;
+        this.credentials = credentials;
+        this.valueClass = valueClass;
+        this.specification = specification;
+    }
+
+    /**
+     * Open the session, retrying until the server is available.
+     */
+    @Override
+    public void connect() {
+        SessionFactory factory = Diffusion.sessions();
+        if (principal != null) {
+            factory = factory.principal(principal);
+        }
+        if (credentials != null) {
+            factory = factory.password(credentials);
+        }
+
+        while (true) {
+            try {
+                session = factory.open(url);
+            }
+            catch(Exception ex) {
+                LOG.warn("Unable to connect: " + ex.getMessage());
+            }
+            if (session != null && session.getState().isConnected()) {
+                LOG.info("Connected to Diffusion: " + session.getSessionId() + " (session " + index + ")");
+                break;
+            }
+            try {
+                LOG.info("Unable to connect, retrying");
+                Thread.sleep(1000);
+            } catch (InterruptedException ignore) {
+            }
+        }
+
+        topicControl = session.feature(TopicControl.class);
+        topicUpdate = session.feature(TopicUpdate.class);
+        topicSpec = specification.apply(topicControl);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addTopic(String topic) {
+        return topicControl.addTopic(topic, topicSpec)
+                .thenApply(result -> result == TopicControl.AddTopicResult.CREATED);
+    }
+
+    /**
+     * Create and validate an update stream for a topic, if there isn't one
+     * already.
+     */
+    @Override
+    public synchronized void createUpdateStream(String topic) throws Exception {
+        if(updateStreams.containsKey(topic)) {
+            return;
+        }
+
+        UpdateStream<?> updateStream = topicUpdate.createUpdateStream(topic, valueClass);
+        updateStream.validate().get();
+        updateStreams.put(topic, updateStream);
+    }
+
+    /**
+     * Send an update, through the topic's update stream if there is one.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<?> set(String topic, Object value) {
+        UpdateStream updateStream = updateStreams.get(topic);
+        if(updateStream != null) {
+            return updateStream.set(value);
+        }
+        return topicUpdate.set(topic, valueClass, value);
+    }
+
+    @Override
+    public void close() {
+        if(session != null) {
+            session.close();
+            LOG.info("Session " + index + " closed");
+        }
+    }
+}
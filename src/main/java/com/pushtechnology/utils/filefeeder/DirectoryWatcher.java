@@ -0,0 +1,248 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Reports files under a directory which have been created or modified since
+ * the watcher was created.
+ *
+ * File system notifications (a WatchService) are used where available. Where
+ * they aren't, or if a poll interval is given, the directory tree is walked
+ * periodically and each file's size and modification time compared with the
+ * previous walk.
+ */
+class DirectoryWatcher implements Closeable {
+
+    private static final Log LOG = Log.get("watch");
+
+    // Poll interval when notifications are unavailable and none was given
+    private static final long DEFAULT_POLL_INTERVAL = 1000;
+
+    // Further events arriving within this time are reported in the same batch
+    private static final long SETTLE_MILLIS = 50;
+
+    private final Path root;
+    // If a single file is being watched, the file; otherwise null
+    private final Path file;
+    private final long pollInterval;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    // For polling: the size and modification time of every file at the last walk
+    private final Map<Path, Long> sizes = new HashMap<>();
+    private final Map<Path, Long> modified = new HashMap<>();
+
+    // For notifications: when the last batch was taken, to recover from overflow
+    private long lastTaken = System.currentTimeMillis();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param pollInterval if greater than zero, poll at this interval (in
+     *                     milliseconds) rather than use notifications
+     */
+    DirectoryWatcher(Path root, long pollInterval) throws IOException {
+        root = root.toAbsolutePath().normalize();
+        this.file = Files.isDirectory(root) ? null : root;
+        this.root = file != null ? root.getParent() : root;
+
+        WatchService service = null;
+        if (pollInterval <= 0) {
+            try {
+                service = FileSystems.getDefault().newWatchService();
+            }
+            catch (UnsupportedOperationException | IOException ex) {
+                LOG.warn("File system notifications unavailable, polling for changes: " + ex.getMessage());
+            }
+        }
+        this.watchService = service;
+        this.pollInterval = pollInterval > 0 ? pollInterval : DEFAULT_POLL_INTERVAL;
+
+        if (watchService != null) {
+            registerAll(this.root);
+        }
+        else {
+            poll();
+        }
+    }
+
+    boolean isPolling() {
+        return watchService == null;
+    }
+
+    /**
+     * Wait for files to change. Paths are absolute.
+     *
+     * @return the changed files, each once, in the order first seen; or an
+     * empty list if the watcher has been closed
+     */
+    List<Path> take() throws InterruptedException {
+        Set<Path> changed = new LinkedHashSet<>();
+        try {
+            while (!closed && changed.isEmpty()) {
+                if (watchService != null) {
+                    takeEvents(changed);
+                }
+                else {
+                    Thread.sleep(pollInterval);
+                    changed.addAll(poll());
+                }
+            }
+        }
+        catch (ClosedWatchServiceException ex) {
+            return new ArrayList<>();
+        }
+        return closed ? new ArrayList<>() : new ArrayList<>(changed);
+    }
+
+    private void takeEvents(Set<Path> changed) throws InterruptedException {
+        final long since = lastTaken;
+        WatchKey key = watchService.take();
+        lastTaken = System.currentTimeMillis();
+
+        boolean overflow = false;
+        while (key != null) {
+            Path dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW || dir == null) {
+                    overflow = true;
+                    continue;
+                }
+
+                Path path = dir.resolve((Path) event.context());
+                if (Files.isDirectory(path)) {
+                    if (event.kind() == ENTRY_CREATE) {
+                        // Files may have been added before the directory was registered
+                        registerAll(path);
+                        changed.addAll(walk(path, 0));
+                    }
+                }
+                else if (Files.isRegularFile(path) && (file == null || file.equals(path))) {
+                    changed.add(path);
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+
+            key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        if (overflow) {
+            // Some events were lost. Allow for coarse modification times.
+            LOG.warn("Too many changes to track, rescanning " + root);
+            changed.addAll(walk(root, since - 2000));
+        }
+    }
+
+    private void registerAll(Path dir) {
+        // For a single file, only its own directory is of interest
+        try (Stream<Path> paths = Files.walk(dir, file != null ? 0 : Integer.MAX_VALUE)) {
+            paths.filter(Files::isDirectory).forEach(path -> {
+                try {
+                    keys.put(path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), path);
+                }
+                catch (IOException ex) {
+                    LOG.warn("Unable to watch " + path + ": " + ex.getMessage());
+                }
+            });
+        }
+        catch (IOException | UncheckedIOException ex) {
+            LOG.warn("Unable to watch " + dir + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return regular files under {@code dir} modified at or after {@code since}
+     */
+    private List<Path> walk(Path dir, long since) {
+        List<Path> files = new ArrayList<>();
+        // For a single file, only its own directory's entries need be looked at
+        try (Stream<Path> paths = Files.walk(dir, file != null ? 1 : Integer.MAX_VALUE)) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                try {
+                    if ((file == null || file.equals(path)) && Files.getLastModifiedTime(path).toMillis() >= since) {
+                        files.add(path);
+                    }
+                }
+                catch (IOException ignore) {
+                    // Removed since the walk found it
+                }
+            });
+        }
+        catch (IOException | UncheckedIOException ex) {
+            LOG.warn("Unable to scan " + dir + ": " + ex.getMessage());
+        }
+        return files;
+    }
+
+    /**
+     * Walk the tree, remembering each file's size and modification time.
+     *
+     * @return files which are new or have changed since the last walk
+     */
+    private List<Path> poll() {
+        List<Path> changed = new ArrayList<>();
+        Set<Path> seen = new LinkedHashSet<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.forEach(path -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (!attributes.isRegularFile() || (file != null && !file.equals(path))) {
+                        return;
+                    }
+                    seen.add(path);
+                    Long size = sizes.put(path, attributes.size());
+                    Long time = modified.put(path, attributes.lastModifiedTime().toMillis());
+                    if (size == null || size != attributes.size() || time != attributes.lastModifiedTime().toMillis()) {
+                        changed.add(path);
+                    }
+                }
+                catch (IOException ignore) {
+                    // Removed since the walk found it
+                }
+            });
+        }
+        catch (IOException | UncheckedIOException ex) {
+            LOG.warn("Unable to scan " + root + ": " + ex.getMessage());
+        }
+
+        sizes.keySet().retainAll(seen);
+        modified.keySet().retainAll(seen);
+        return changed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            }
+            catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * The fingerprint (a 64-bit hash) of the last value sent to each topic, so
+ * that values identical to the previous one can be skipped.
+ *
+ * Fingerprints are held in open-addressed tables of topic names and
+ * primitive longs, split into segments with a lock each so that threads
+ * publishing to different topics rarely contend.
+ */
+class Fingerprints {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static final int SEGMENT_BITS = 4;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    Fingerprints() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return a 64-bit hash of {@code bytes}, reading eight bytes at a time
+     */
+    static long hash(byte[] bytes) {
+        final int length = bytes.length;
+        long h = length * P1;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            h ^= Long.rotateLeft((long) LONGS.get(bytes, i) * P2, 31) * P1;
+            h = Long.rotateLeft(h, 27) * P1 + P2;
+        }
+        for (; i < length; i++) {
+            h ^= (bytes[i] & 0xFFL) * P1;
+            h = Long.rotateLeft(h, 11) * P2;
+        }
+
+        // Finalise so that every input bit affects every output bit
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Record {@code fingerprint} as the latest for {@code topic}.
+     *
+     * @return true if it is the same as the previous fingerprint for the topic
+     */
+    boolean unchanged(String topic, long fingerprint) {
+        int hash = spread(topic);
+        return segments[hash & (segments.length - 1)].put(topic, hash >>> SEGMENT_BITS, fingerprint);
+    }
+
+    private static int spread(String topic) {
+        int hash = topic.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    boolean unchanged(String topic, byte[] bytes) {
+        return unchanged(topic, hash(bytes));
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    private static final class Segment {
+        private String[] topics = new String[64];
+        private long[] fingerprints = new long[64];
+        private int size;
+
+        synchronized boolean put(String topic, int hash, long fingerprint) {
+            int mask = topics.length - 1;
+            int i = hash & mask;
+            String existing;
+            while ((existing = topics[i]) != null) {
+                if (existing.equals(topic)) {
+                    boolean unchanged = fingerprints[i] == fingerprint;
+                    fingerprints[i] = fingerprint;
+                    return unchanged;
+                }
+                i = (i + 1) & mask;
+            }
+
+            topics[i] = topic;
+            fingerprints[i] = fingerprint;
+            if (++size > topics.length / 2) {
+                grow();
+            }
+            return false;
+        }
+
+        private void grow() {
+            String[] oldTopics = topics;
+            long[] oldFingerprints = fingerprints;
+            topics = new String[oldTopics.length * 2];
+            fingerprints = new long[oldTopics.length * 2];
+
+            int mask = topics.length - 1;
+            for (int j = 0; j < oldTopics.length; j++) {
+                String topic = oldTopics[j];
+                if (topic == null) {
+                    continue;
+                }
+                int i = (spread(topic) >>> SEGMENT_BITS) & mask;
+                while (topics[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                topics[i] = topic;
+                fingerprints[i] = oldFingerprints[j];
+            }
+        }
+    }
+}
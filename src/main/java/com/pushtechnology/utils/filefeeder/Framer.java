@@ -0,0 +1,158 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a stream into records incrementally, so that a file of any size is
+ * read through a buffer which only has to hold the current record.
+ *
+ * A framer is given the unread part of the buffer and either finds a
+ * complete record at its start or asks for more input. Framers keep enough
+ * state to carry on scanning where they stopped when more input arrives,
+ * rather than scanning a long record again from its start. A framer is used
+ * for a single stream.
+ */
+abstract class Framer {
+
+    private static final Log LOG = Log.get("ingest");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The largest array the VM will reliably allocate
+    static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    // The buffer never grows beyond this, so no record may be longer
+    int maxBufferSize = MAX_BUFFER_SIZE;
+
+    /**
+     * How the records in a file are framed, selected with --format.
+     */
+    enum Format {
+        // The whole file is one record
+        WHOLE,
+        // Newline-delimited records
+        LINES,
+        // Each record preceded by its length as an unsigned varint
+        VARINT,
+        // Each record preceded by its length as a big-endian 32-bit integer
+        INT32,
+        // The elements of a JSON array
+        JSON,
+        // The rows of a CSV file with a header row, each as a JSON object
+        CSV;
+
+        /**
+         * @return a new framer for one stream, or null for WHOLE
+         */
+        Framer create() {
+            switch (this) {
+                case LINES:
+                    return new LineFramer();
+                case VARINT:
+                    return new LengthPrefixFramer(true);
+                case INT32:
+                    return new LengthPrefixFramer(false);
+                case JSON:
+                    return new JsonArrayFramer();
+                case CSV:
+                    return new CsvFramer();
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Receives each record as it is split from a stream.
+     */
+    interface RecordConsumer {
+        /**
+         * @param start the offset of the start of the record's framing in
+         *              the stream, which for a compressed file is the
+         *              uncompressed stream
+         * @param end   the offset after the record
+         */
+        void accept(byte[] record, long start, long end);
+    }
+
+    // The record found by the last call to next()
+    protected byte[] record;
+
+    /**
+     * Look for the next record at the start of {@code buffer[from, to)}.
+     *
+     * @param eof true if the stream ends at {@code to}
+     * @return the number of bytes consumed, or zero if more input is needed.
+     * When bytes are consumed, {@link #record()} is the record, or null if
+     * they were only framing, such as separators or a header.
+     * @throws IOException if the input can't be framed
+     */
+    abstract int next(byte[] buffer, int from, int to, boolean eof) throws IOException;
+
+    byte[] record() {
+        return record;
+    }
+
+    /**
+     * Split a stream into records as it is read.
+     *
+     * The offsets given with each record span the bytes consumed for it,
+     * including any framing before it, so the end of one record is the
+     * start of the next.
+     *
+     * @param name identifies the stream in errors, such as its file's path
+     * @throws IOException if a record is too long to be held in memory
+     */
+    void forEachRecord(InputStream in, String name, RecordConsumer consumer) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int from = 0;
+        int to = 0;
+        boolean eof = false;
+        // Stream offset of buffer[from], and of the start of the framing before the next record
+        long position = 0;
+        long start = 0;
+
+        while (true) {
+            int consumed = from < to ? next(buffer, from, to, eof) : 0;
+            if (consumed > 0) {
+                from += consumed;
+                position += consumed;
+                if (record != null) {
+                    consumer.accept(record, start, position);
+                    start = position;
+                }
+                continue;
+            }
+            if (eof) {
+                break;
+            }
+
+            // Need more input: move what's left to the start, and grow for a long record
+            if (from > 0) {
+                System.arraycopy(buffer, from, buffer, 0, to - from);
+                to -= from;
+                from = 0;
+            }
+            if (to == buffer.length) {
+                if (buffer.length >= maxBufferSize) {
+                    throw new IOException("Record at offset " + start + " of " + name + " is longer than "
+                            + maxBufferSize + " bytes");
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(maxBufferSize, 2L * buffer.length));
+            }
+            int n = in.read(buffer, to, buffer.length - to);
+            if (n < 0) {
+                eof = true;
+            }
+            else {
+                to += n;
+            }
+        }
+
+        if (from < to) {
+            LOG.warn("Ignoring " + (to - from) + " bytes at the end of " + name + " which are not a complete record");
+        }
+    }
+}
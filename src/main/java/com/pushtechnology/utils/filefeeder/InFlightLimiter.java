@@ -0,0 +1,213 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of updates awaiting acknowledgement from the server.
+ *
+ * A permit is taken with {@link #acquire()} before each update is sent and
+ * returned with {@link #release(long, boolean)} from the update's completion
+ * callback.
+ *
+ * In adaptive mode the limit follows an AIMD (additive increase,
+ * multiplicative decrease) scheme: every acknowledgement faster than the
+ * latency target grows the window by roughly one update per round trip,
+ * while a slow acknowledgement or an error halves it. At most one decrease
+ * is applied per round trip, so a burst of slow acks from the same window
+ * only counts once.
+ */
+class InFlightLimiter {
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private int maxLimit;
+    private final boolean adaptive;
+    private final long targetLatencyNanos;
+
+    private double limit;
+    private int inFlight = 0;
+
+    // Time of the last decrease; further decreases wait for one round trip
+    private boolean decreased = false;
+    private long lastDecrease;
+
+    /**
+     * A fixed-size window of {@code limit} updates.
+     */
+    InFlightLimiter(int limit) {
+        this(limit, limit, false, 0);
+    }
+
+    /**
+     * @param initialLimit  starting window size
+     * @param maxLimit      the window never grows beyond this
+     * @param adaptive      adjust the window from the observed ack latency
+     * @param targetLatency in adaptive mode, acks slower than this (in
+     *                      milliseconds) shrink the window
+     */
+    InFlightLimiter(int initialLimit, int maxLimit, boolean adaptive, long targetLatency) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+        this.adaptive = adaptive;
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+    }
+
+    /**
+     * Wait until fewer than {@link #getLimit()} updates are in flight, then
+     * take a permit.
+     */
+    void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                available.await();
+            }
+            inFlight++;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return a permit once an update has completed.
+     *
+     * @param latencyNanos time from sending the update to its completion
+     * @param error        true if the update failed
+     */
+    void release(long latencyNanos, boolean error) {
+        lock.lock();
+        try {
+            inFlight--;
+
+            if (adaptive) {
+                if (error || latencyNanos > targetLatencyNanos) {
+                    long now = System.nanoTime();
+                    if (!decreased || now - lastDecrease > latencyNanos) {
+                        limit = Math.max(1, limit * DECREASE_FACTOR);
+                        lastDecrease = now;
+                        decreased = true;
+                    }
+                }
+                else if (limit < maxLimit) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+
+            available.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a permit from {@code global}, if there is one, and then from
+     * {@code local}, so that an update counts against both the overall
+     * window and its session's.
+     */
+    static void acquire(InFlightLimiter global, InFlightLimiter local) throws InterruptedException {
+        if (global != null) {
+            global.acquire();
+        }
+        try {
+            local.acquire();
+        }
+        catch (InterruptedException ex) {
+            if (global != null) {
+                global.release(0, false);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Return the permits taken by {@link #acquire(InFlightLimiter, InFlightLimiter)}.
+     */
+    static void release(InFlightLimiter global, InFlightLimiter local, long latencyNanos, boolean error) {
+        local.release(latencyNanos, error);
+        if (global != null) {
+            global.release(latencyNanos, error);
+        }
+    }
+
+    /**
+     * Change the window, for example between the phases of a scenario.
+     * Updates already in flight are unaffected, but no more are allowed
+     * until there are fewer than the new limit.
+     */
+    void setLimit(int limit) {
+        lock.lock();
+        try {
+            this.maxLimit = Math.max(1, limit);
+            this.limit = this.maxLimit;
+            available.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until every acquired permit has been released.
+     */
+    void awaitIdle() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight > 0) {
+                available.await();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until every acquired permit has been released, or until the
+     * timeout.
+     *
+     * @return true if no permits are held
+     */
+    boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (inFlight > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = available.awaitNanos(remaining);
+            }
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
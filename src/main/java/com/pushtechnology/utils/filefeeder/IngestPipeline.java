@@ -0,0 +1,503 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Staged ingest of a file or directory tree:
+ *
+ * <pre>
+ *   scan -> read/split -> decode -> publish
+ * </pre>
+ *
+ * Each stage runs on its own pool of threads and hands work to the next
+ * stage through bounded queues, so a slow stage applies backpressure to the
+ * ones before it. Records are routed to decode and publish threads by a hash
+ * of the topic name, which keeps updates to any one topic in order.
+ *
+ * Alternatively, each file is given a virtual thread which reads, decodes
+ * and publishes its records itself. Waiting for file I/O or for room in the
+ * in-flight window then only parks that file's thread, so many files can be
+ * fed at once without a pool of platform threads. The number of files open
+ * at once is still limited, to stay within the process's file descriptors.
+ */
+class IngestPipeline {
+
+    private static final Log LOG = Log.get("ingest");
+
+    // With virtual threads, the most files read at once
+    static final int MAX_OPEN_FILES = 256;
+
+    // Marks the end of the directory and file queues; compared by identity
+    private static final Path END = Paths.get("");
+
+    /**
+     * What the pipeline reads files with and publishes records to;
+     * implemented by {@link Main}.
+     */
+    interface Feeder {
+        /**
+         * Called for each file as it is found, before it is queued to be
+         * read, for example to start creating its topics.
+         */
+        void scanned(Path path);
+
+        /**
+         * Pass each record in a file to {@code sink}.
+         */
+        void processFile(Path path, Main.RecordSink sink);
+
+        /**
+         * @return true if the data needn't be published again
+         */
+        boolean skipUnchanged(String topic, byte[] bytes);
+
+        /**
+         * @return the value, or null if the data is invalid
+         */
+        Object decode(String topic, byte[] bytes);
+
+        void publish(String topic, Object value, int size, long due, Consumer<Boolean> onComplete);
+    }
+
+    private final Feeder feeder;
+
+    private final int scanThreads;
+    private final int readThreads;
+    private final int decodeThreads;
+    private final int publishThreads;
+    private final boolean virtual;
+    private final int maxOpenFiles;
+
+    private final BlockingQueue<Path> dirQueue = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingDirs = new AtomicInteger();
+    private final CountDownLatch scanDone;
+
+    private final BlockingQueue<Path> fileQueue;
+    private final List<BlockingQueue<Record>> decodeQueues = new ArrayList<>();
+    private final List<BlockingQueue<Record>> publishQueues = new ArrayList<>();
+
+    // Files queued and not yet read; waited on through its monitor
+    private final AtomicInteger unread = new AtomicInteger();
+
+    private List<Thread> readers;
+    private List<Thread> decoders;
+    private List<Thread> publishers;
+
+    /**
+     * A single record passing through the decode and publish stages.
+     * {@link #END} marks the end of the stream.
+     */
+    private static final class Record {
+        static final Record END = new Record(null, null, 0, null);
+
+        final String topic;
+        final byte[] bytes;
+        // When to publish, with --timestamp; zero for as soon as possible
+        final long due;
+        // Called once the record has been acknowledged or has failed; may be null
+        final Consumer<Boolean> onComplete;
+        Object value;
+
+        Record(String topic, byte[] bytes, long due, Consumer<Boolean> onComplete) {
+            this.topic = topic;
+            this.bytes = bytes;
+            this.due = due;
+            this.onComplete = onComplete;
+        }
+    }
+
+    IngestPipeline(Feeder feeder, int scanThreads, int readThreads, int decodeThreads, int publishThreads, int queueSize) {
+        this(feeder, scanThreads, readThreads, decodeThreads, publishThreads, queueSize, false);
+    }
+
+    /**
+     * @param virtual if true, feed each file from its own virtual thread
+     *                rather than through the staged thread pools
+     */
+    IngestPipeline(Feeder feeder, int scanThreads, int readThreads, int decodeThreads, int publishThreads, int queueSize,
+                   boolean virtual) {
+        this(feeder, scanThreads, readThreads, decodeThreads, publishThreads, queueSize, virtual, MAX_OPEN_FILES);
+    }
+
+    /**
+     * @param maxOpenFiles with virtual threads, the most files read at once
+     */
+    IngestPipeline(Feeder feeder, int scanThreads, int readThreads, int decodeThreads, int publishThreads, int queueSize,
+                   boolean virtual, int maxOpenFiles) {
+        this.feeder = feeder;
+        this.virtual = virtual;
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        this.scanThreads = Math.max(1, scanThreads);
+        this.readThreads = Math.max(1, readThreads);
+        this.decodeThreads = Math.max(1, decodeThreads);
+        this.publishThreads = Math.max(1, publishThreads);
+
+        scanDone = new CountDownLatch(1);
+        fileQueue = new ArrayBlockingQueue<>(queueSize);
+        for (int i = 0; i < this.decodeThreads; i++) {
+            decodeQueues.add(new ArrayBlockingQueue<>(queueSize));
+        }
+        for (int i = 0; i < this.publishThreads; i++) {
+            publishQueues.add(new ArrayBlockingQueue<>(queueSize));
+        }
+    }
+
+    /**
+     * Process the file, or all files under the directory, and return once
+     * every record has been handed to the publisher.
+     */
+    void run(Path root) throws InterruptedException {
+        if (virtual) {
+            runVirtual(scan(root));
+            return;
+        }
+
+        List<Thread> scanners = start("scan", scanThreads, this::scan);
+        start();
+
+        if (Files.isDirectory(root)) {
+            pendingDirs.incrementAndGet();
+            dirQueue.put(root);
+        }
+        else {
+            queue(root);
+            scanDone.countDown();
+        }
+
+        // Shut the stages down in order, once the previous stage has drained
+        scanDone.await();
+        for (Thread ignored : scanners) {
+            dirQueue.put(END);
+        }
+        join(scanners);
+        close();
+    }
+
+    /**
+     * Start the read, decode and publish stages, to be given files by
+     * {@link #process(List)} until {@link #close()}, so that every batch is
+     * handled by the same threads.
+     */
+    void start() {
+        if (virtual) {
+            return;
+        }
+        readers = start("read", readThreads, this::read);
+        decoders = start("decode", decodeThreads, i -> decode(decodeQueues.get(i)));
+        publishers = start("publish", publishThreads, i -> publish(publishQueues.get(i)));
+    }
+
+    /**
+     * Process the given files, without scanning for others, and return once
+     * each of them has been read, so that a file changed again is not read
+     * by two threads at once. Their records may still be on their way to
+     * the publisher.
+     */
+    void process(List<Path> files) throws InterruptedException {
+        if (virtual) {
+            runVirtual(files);
+            return;
+        }
+
+        for (Path file : files) {
+            queue(file);
+        }
+        synchronized (unread) {
+            while (unread.get() > 0) {
+                unread.wait();
+            }
+        }
+    }
+
+    /**
+     * Once every file queued has been read, stop the stages, and return once
+     * every record has been handed to the publisher.
+     */
+    void close() throws InterruptedException {
+        if (virtual) {
+            return;
+        }
+
+        for (Thread ignored : readers) {
+            fileQueue.put(END);
+        }
+        join(readers);
+
+        for (BlockingQueue<Record> queue : decodeQueues) {
+            queue.put(Record.END);
+        }
+        join(decoders);
+
+        for (BlockingQueue<Record> queue : publishQueues) {
+            queue.put(Record.END);
+        }
+        join(publishers);
+    }
+
+    /**
+     * Feed each file from its own virtual thread, and wait for them all. A
+     * file's thread is only started once there is room for it among the
+     * files open at once.
+     */
+    private void runVirtual(List<Path> files) throws InterruptedException {
+        Semaphore open = new Semaphore(maxOpenFiles);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path path : files) {
+                scanned(path);
+                open.acquire();
+                executor.execute(() -> {
+                    try {
+                        feeder.processFile(path, (topic, bytes, due, onComplete) -> {
+                            Object value = decode(topic, bytes, onComplete);
+                            if (value != null) {
+                                publish(topic, value, bytes.length, due, onComplete);
+                            }
+                        });
+                    }
+                    catch (RuntimeException ex) {
+                        LOG.warn("Unable to process file " + path + ": " + ex);
+                    }
+                    finally {
+                        open.release();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * @return the file, or all files under the directory; directories which
+     * can't be read are logged and skipped
+     */
+    private static List<Path> scan(Path root) {
+        List<Path> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (Files.isRegularFile(file)) {
+                        files.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    LOG.warn("Unable to scan " + file + ": " + ex.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException ex) {
+            LOG.warn("Unable to scan directory " + root + ": " + ex.getMessage());
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Tell the feeder about a file. A failure is logged, and the file is
+     * still read.
+     */
+    private void scanned(Path path) {
+        try {
+            feeder.scanned(path);
+        }
+        catch (RuntimeException ex) {
+            LOG.warn("Unable to process file " + path + ": " + ex);
+        }
+    }
+
+    private interface Stage {
+        void run(int index) throws InterruptedException;
+    }
+
+    private List<Thread> start(String name, int count, Stage stage) {
+        List<Thread> threads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    stage.run(index);
+                }
+                catch (InterruptedException ignore) {
+                }
+            }, "ingest-" + name + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    private static void join(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void scan(int index) throws InterruptedException {
+        while (true) {
+            Path dir = dirQueue.take();
+            if (dir == END) {
+                return;
+            }
+
+            try {
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    for (Path path : stream) {
+                        if (Files.isDirectory(path)) {
+                            pendingDirs.incrementAndGet();
+                            dirQueue.put(path);
+                        }
+                        else if (Files.isRegularFile(path)) {
+                            files.add(path);
+                        }
+                    }
+                }
+                catch (IOException | DirectoryIteratorException ex) {
+                    // Files found before the error are still read
+                    LOG.warn("Unable to scan directory " + dir + ": " + ex.getMessage());
+                }
+
+                files.sort(null);
+                for (Path file : files) {
+                    queue(file);
+                }
+            }
+            catch (RuntimeException ex) {
+                LOG.warn("Unable to scan directory " + dir + ": " + ex);
+            }
+            finally {
+                if (pendingDirs.decrementAndGet() == 0) {
+                    scanDone.countDown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tell the feeder about a file, and queue it to be read.
+     */
+    private void queue(Path file) throws InterruptedException {
+        scanned(file);
+        unread.incrementAndGet();
+        fileQueue.put(file);
+    }
+
+    private void read(int index) throws InterruptedException {
+        while (true) {
+            Path path = fileQueue.take();
+            if (path == END) {
+                return;
+            }
+
+            try {
+                feeder.processFile(path, (topic, bytes, due, onComplete) -> {
+                    try {
+                        lane(decodeQueues, topic).put(new Record(topic, bytes, due, onComplete));
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            catch (RuntimeException ex) {
+                LOG.warn("Unable to process file " + path + ": " + ex);
+            }
+            finally {
+                if (unread.decrementAndGet() == 0) {
+                    synchronized (unread) {
+                        unread.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    private void decode(BlockingQueue<Record> queue) throws InterruptedException {
+        while (true) {
+            Record record = queue.take();
+            if (record == Record.END) {
+                return;
+            }
+
+            record.value = decode(record.topic, record.bytes, record.onComplete);
+            if (record.value != null) {
+                lane(publishQueues, record.topic).put(record);
+            }
+        }
+    }
+
+    /**
+     * @return the value to publish, or null if there is nothing to publish,
+     * in which case {@code onComplete} has been called
+     */
+    private Object decode(String topic, byte[] bytes, Consumer<Boolean> onComplete) {
+        Object value;
+        try {
+            value = feeder.skipUnchanged(topic, bytes) ? null : feeder.decode(topic, bytes);
+        }
+        catch (RuntimeException ex) {
+            LOG.warn("Unable to decode update to " + topic + ": " + ex);
+            value = null;
+        }
+        // Unchanged data needn't be sent, and invalid data won't be any better next time
+        if (value == null && onComplete != null) {
+            onComplete.accept(true);
+        }
+        return value;
+    }
+
+    private void publish(BlockingQueue<Record> queue) throws InterruptedException {
+        while (true) {
+            Record record = queue.take();
+            if (record == Record.END) {
+                return;
+            }
+
+            publish(record.topic, record.value, record.bytes.length, record.due, record.onComplete);
+        }
+    }
+
+    /**
+     * Publish a value. An update which can't be sent, for example to an
+     * invalid topic path, is logged and failed, so that the rest of the
+     * topics in its lane are still published.
+     */
+    private void publish(String topic, Object value, int size, long due, Consumer<Boolean> onComplete) {
+        try {
+            feeder.publish(topic, value, size, due, onComplete);
+        }
+        catch (RuntimeException ex) {
+            LOG.warn("Unable to publish to " + topic + ": " + ex);
+            if (onComplete != null) {
+                onComplete.accept(false);
+            }
+        }
+    }
+
+    private static <Q> Q lane(List<Q> lanes, String topic) {
+        return lanes.get(Math.floorMod(topic.hashCode(), lanes.size()));
+    }
+}
@@ -0,0 +1,110 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.Arrays;
+
+/**
+ * The elements of a JSON array, found by tracking brackets and strings
+ * rather than parsing, so that a document of any size can be split.
+ *
+ * Each element is a record, exactly as it appears in the document. A
+ * sequence of top-level values which aren't in an array (as in
+ * newline-delimited JSON) is split the same way, as are several arrays one
+ * after another. Invalid JSON is split at a best guess and left to fail
+ * decoding.
+ */
+class JsonArrayFramer extends Framer {
+
+    // Whether the top-level array has been opened
+    private boolean inArray = false;
+
+    // State of the element being scanned, relative to the start of the unread input
+    private int elementStart = -1;
+    private int scanned = 0;
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+
+    @Override
+    int next(byte[] buffer, int from, int to, boolean eof) {
+        int i = from + scanned;
+
+        if (elementStart < 0) {
+            // Skip whitespace and separators to the start of an element
+            for (; i < to; i++) {
+                byte b = buffer[i];
+                if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == ',') {
+                    continue;
+                }
+                if (b == '[' && !inArray) {
+                    inArray = true;
+                    continue;
+                }
+                if (b == ']' && inArray) {
+                    inArray = false;
+                    continue;
+                }
+                break;
+            }
+            if (i == to) {
+                // Only framing: consume it
+                record = null;
+                scanned = 0;
+                return to - from;
+            }
+            elementStart = i - from;
+        }
+
+        for (; i < to; i++) {
+            byte b = buffer[i];
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                }
+                else if (b == '\\') {
+                    escaped = true;
+                }
+                else if (b == '"') {
+                    inString = false;
+                    if (depth == 0) {
+                        return element(buffer, from, i + 1);
+                    }
+                }
+            }
+            else if (b == '"') {
+                inString = true;
+            }
+            else if (b == '{' || b == '[') {
+                depth++;
+            }
+            else if (b == '}' || b == ']') {
+                if (depth == 0) {
+                    // The end of the array, after a number, true, false or null; or if
+                    // there is nothing before it, invalid JSON passed on as it is
+                    return element(buffer, from, i == from + elementStart ? i + 1 : i);
+                }
+                if (--depth == 0) {
+                    return element(buffer, from, i + 1);
+                }
+            }
+            else if (depth == 0 && (b == ',' || b == ' ' || b == '\t' || b == '\r' || b == '\n')) {
+                return element(buffer, from, i);
+            }
+        }
+
+        if (eof) {
+            return element(buffer, from, to);
+        }
+        scanned = to - from;
+        return 0;
+    }
+
+    private int element(byte[] buffer, int from, int end) {
+        record = Arrays.copyOfRange(buffer, from + elementStart, end);
+        elementStart = -1;
+        scanned = 0;
+        depth = 0;
+        inString = false;
+        escaped = false;
+        return end - from;
+    }
+}
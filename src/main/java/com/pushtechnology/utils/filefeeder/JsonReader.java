@@ -0,0 +1,195 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads small JSON documents, such as scenario files, into maps, lists,
+ * strings, numbers (as Double), booleans and nulls.
+ *
+ * This is for configuration read once at startup, not for topic data.
+ */
+final class JsonReader {
+
+    private final String text;
+    private int position = 0;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not valid JSON
+     */
+    static Object parse(String text) {
+        JsonReader reader = new JsonReader(text);
+        Object value = reader.value();
+        reader.skipWhitespace();
+        if (reader.position < text.length()) {
+            throw reader.error("Unexpected content");
+        }
+        return value;
+    }
+
+    private Object value() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("Unexpected end of input");
+        }
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return string();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return number();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (consume('}')) {
+            return object;
+        }
+        do {
+            skipWhitespace();
+            if (position >= text.length() || text.charAt(position) != '"') {
+                throw error("Expected a field name");
+            }
+            String name = string();
+            skipWhitespace();
+            if (!consume(':')) {
+                throw error("Expected ':'");
+            }
+            object.put(name, value());
+            skipWhitespace();
+        }
+        while (consume(','));
+        if (!consume('}')) {
+            throw error("Expected ',' or '}'");
+        }
+        return object;
+    }
+
+    private List<Object> array() {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (consume(']')) {
+            return array;
+        }
+        do {
+            array.add(value());
+            skipWhitespace();
+        }
+        while (consume(','));
+        if (!consume(']')) {
+            throw error("Expected ',' or ']'");
+        }
+        return array;
+    }
+
+    private String string() {
+        StringBuilder string = new StringBuilder();
+        position++;
+        while (position < text.length()) {
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return string.toString();
+            }
+            if (c != '\\') {
+                string.append(c);
+                continue;
+            }
+            if (position >= text.length()) {
+                break;
+            }
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'b': string.append('\b'); break;
+                case 'f': string.append('\f'); break;
+                case 'n': string.append('\n'); break;
+                case 'r': string.append('\r'); break;
+                case 't': string.append('\t'); break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error("Invalid escape");
+                    }
+                    try {
+                        string.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    }
+                    catch (NumberFormatException ex) {
+                        throw error("Invalid escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    string.append(escaped);
+                    break;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private Double number() {
+        int start = position;
+        while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return Double.valueOf(text.substring(start, position));
+        }
+        catch (NumberFormatException ex) {
+            position = start;
+            throw error("Invalid number");
+        }
+    }
+
+    private Object literal(String literal, Object value) {
+        if (!text.startsWith(literal, position)) {
+            throw error("Unexpected character '" + text.charAt(position) + "'");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private boolean consume(char c) {
+        if (position < text.length() && text.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        int line = 1;
+        for (int i = 0; i < position && i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return new IllegalArgumentException(message + " at line " + line);
+    }
+}
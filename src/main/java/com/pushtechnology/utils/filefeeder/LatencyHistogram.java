@@ -0,0 +1,127 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, fixed-size histogram of latencies in nanoseconds.
+ *
+ * Buckets are log-linear: values below 128 have a bucket each, and every
+ * power of two above that is split into 64 buckets, so any recorded value is
+ * reported to within 1.6% of its true value, from 1ns up to Long.MAX_VALUE,
+ * in under 4,000 counters.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * HALF_COUNT + HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long value) {
+        counts.incrementAndGet(indexOf(Math.max(0, value)));
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the largest value which maps to bucket {@code index}
+     */
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / HALF_COUNT - 1;
+        long mantissa = index - (long) shift * HALF_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Take a copy of the counts recorded since the last call, and reset them.
+     */
+    Snapshot snapshotAndReset() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts.get(i) != 0) {
+                copy[i] = counts.getAndSet(i, 0);
+            }
+        }
+        return new Snapshot(copy);
+    }
+
+    /**
+     * An immutable copy of a histogram, from which percentiles are read.
+     */
+    static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+            long sum = 0;
+            for (long count : counts) {
+                sum += count;
+            }
+            this.total = sum;
+        }
+
+        long getCount() {
+            return total;
+        }
+
+        int getBucketCount() {
+            return counts.length;
+        }
+
+        long getCountAt(int index) {
+            return counts[index];
+        }
+
+        /**
+         * @param percentile in the range 0-100
+         * @return the value at the percentile, or 0 if nothing was recorded
+         */
+        long getValueAtPercentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return highestValueAt(i);
+                }
+            }
+            return getMax();
+        }
+
+        long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestValueAt(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Add the counts from another snapshot to a copy of this one.
+         */
+        Snapshot merge(Snapshot other) {
+            long[] merged = Arrays.copyOf(counts, Math.max(counts.length, other.counts.length));
+            for (int i = 0; i < other.counts.length; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(merged);
+        }
+    }
+}
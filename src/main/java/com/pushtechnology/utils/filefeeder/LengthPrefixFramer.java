@@ -0,0 +1,62 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Binary records, each preceded by its length: either an unsigned varint
+ * (seven bits per byte, least significant first, as written by protobuf's
+ * writeDelimitedTo()) or a big-endian 32-bit integer.
+ */
+class LengthPrefixFramer extends Framer {
+
+    private final boolean varint;
+
+    LengthPrefixFramer(boolean varint) {
+        this.varint = varint;
+    }
+
+    @Override
+    int next(byte[] buffer, int from, int to, boolean eof) throws IOException {
+        long length = 0;
+        int prefix;
+
+        if (varint) {
+            int i = from;
+            int shift = 0;
+            while (true) {
+                if (i == to) {
+                    return 0;
+                }
+                byte b = buffer[i++];
+                length |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+                shift += 7;
+                if (shift > 28) {
+                    throw new IOException("Invalid varint record length");
+                }
+            }
+            prefix = i - from;
+        }
+        else {
+            if (to - from < 4) {
+                return 0;
+            }
+            length = ((buffer[from] & 0xFFL) << 24) | ((buffer[from + 1] & 0xFF) << 16)
+                    | ((buffer[from + 2] & 0xFF) << 8) | (buffer[from + 3] & 0xFF);
+            prefix = 4;
+        }
+
+        if (length > MAX_BUFFER_SIZE - prefix) {
+            throw new IOException("Record length " + length + " is too large");
+        }
+        int end = from + prefix + (int) length;
+        if (end > to) {
+            return 0;
+        }
+        record = Arrays.copyOfRange(buffer, from + prefix, end);
+        return end - from;
+    }
+}
@@ -0,0 +1,36 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.Arrays;
+
+/**
+ * Newline-delimited records, with the same boundaries as
+ * {@link MappedRecordReader}: a '\r' before a newline is dropped, a '\r' on
+ * its own is left in the record, and a final record need not end with a
+ * newline.
+ */
+class LineFramer extends Framer {
+
+    // Bytes after the start of the current record already known not to be newlines
+    private int scanned = 0;
+
+    @Override
+    int next(byte[] buffer, int from, int to, boolean eof) {
+        for (int i = from + scanned; i < to; i++) {
+            if (buffer[i] == '\n') {
+                int end = i > from && buffer[i - 1] == '\r' ? i - 1 : i;
+                record = Arrays.copyOfRange(buffer, from, end);
+                scanned = 0;
+                return i + 1 - from;
+            }
+        }
+
+        if (eof) {
+            // Final record without a trailing newline
+            record = Arrays.copyOfRange(buffer, from, to);
+            scanned = 0;
+            return to - from;
+        }
+        scanned = to - from;
+        return 0;
+    }
+}
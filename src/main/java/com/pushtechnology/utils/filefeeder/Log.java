@@ -0,0 +1,171 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Leveled logging by category, written asynchronously so that logging never
+ * blocks the thread which logs.
+ *
+ * Each category has a level, by default the global level, and messages
+ * below it cost no more than a field read; use the {@link Supplier}
+ * overloads so that messages which won't be written aren't built. Messages
+ * which are written are passed to an {@link AsyncLogWriter}, and each
+ * category can be limited to a number of messages per second, with the
+ * number suppressed reported once a second.
+ */
+final class Log {
+
+    enum Level {
+        ERROR, WARN, INFO, DEBUG, TRACE
+    }
+
+    private static final Map<String, Log> LOGS = new ConcurrentHashMap<>();
+    private static final AsyncLogWriter WRITER = new AsyncLogWriter(8192);
+
+    private static volatile Level defaultLevel = Level.INFO;
+    private static volatile Map<String, Level> categoryLevels = new HashMap<>();
+    private static volatile int ratePerSecond = 0;
+
+    private final String category;
+    private volatile Level level;
+
+    // Rate limiting: the second messages are being counted in, and how many there have been
+    private final AtomicLong second = new AtomicLong();
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicInteger suppressed = new AtomicInteger();
+
+    private Log(String category) {
+        this.category = category;
+        this.level = levelFor(category);
+    }
+
+    /**
+     * @return the log for a category
+     */
+    static Log get(String category) {
+        return LOGS.computeIfAbsent(category, Log::new);
+    }
+
+    /**
+     * Configure logging from a specification such as "info" or
+     * "warn,update=debug,cache=trace": the default level, then levels for
+     * individual categories.
+     *
+     * @param ratePerSecond the most messages written per category each
+     *                      second, or zero for no limit
+     * @throws IllegalArgumentException if the specification is invalid
+     */
+    static void configure(String specification, int ratePerSecond) {
+        Level level = Level.INFO;
+        Map<String, Level> levels = new HashMap<>();
+        for (String part : specification.split(",")) {
+            part = part.trim();
+            int equals = part.indexOf('=');
+            if (equals < 0) {
+                level = Level.valueOf(part.toUpperCase());
+            }
+            else {
+                levels.put(part.substring(0, equals).trim(), Level.valueOf(part.substring(equals + 1).trim().toUpperCase()));
+            }
+        }
+
+        defaultLevel = level;
+        categoryLevels = levels;
+        Log.ratePerSecond = Math.max(0, ratePerSecond);
+        for (Log log : LOGS.values()) {
+            log.level = levelFor(log.category);
+        }
+    }
+
+    private static Level levelFor(String category) {
+        return categoryLevels.getOrDefault(category, defaultLevel);
+    }
+
+    /**
+     * Wait until every message logged so far has been written.
+     */
+    static void flush() {
+        WRITER.flush();
+    }
+
+    /**
+     * @return the number of messages discarded because the writer could not
+     * keep up
+     */
+    static long getDropped() {
+        return WRITER.getDropped();
+    }
+
+    static AsyncLogWriter writer() {
+        return WRITER;
+    }
+
+    boolean isEnabled(Level level) {
+        return level.compareTo(this.level) <= 0;
+    }
+
+    void log(Level level, String message) {
+        if (!isEnabled(level) || limited()) {
+            return;
+        }
+        WRITER.write(level, category, message);
+    }
+
+    void log(Level level, Supplier<String> message) {
+        if (!isEnabled(level) || limited()) {
+            return;
+        }
+        WRITER.write(level, category, message.get());
+    }
+
+    private boolean limited() {
+        final int rate = ratePerSecond;
+        if (rate == 0) {
+            return false;
+        }
+
+        long now = System.nanoTime() / 1_000_000_000L;
+        long current = second.get();
+        if (now != current && second.compareAndSet(current, now)) {
+            count.set(0);
+            int n = suppressed.getAndSet(0);
+            if (n > 0) {
+                WRITER.write(Level.WARN, category, n + " messages suppressed in the last second");
+            }
+        }
+        if (count.incrementAndGet() > rate) {
+            suppressed.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    void debug(Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+
+    void trace(Supplier<String> message) {
+        log(Level.TRACE, message);
+    }
+}
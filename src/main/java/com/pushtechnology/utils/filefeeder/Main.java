@@ -5,11 +5,7 @@
 package com.pushtechnology.utils.filefeeder;
 
 import com.pushtechnology.diffusion.client.Diffusion;
-import com.pushtechnology.diffusion.client.features.TopicUpdate;
-import com.pushtechnology.diffusion.client.features.UpdateStream;
 import com.pushtechnology.diffusion.client.features.control.topics.TopicControl;
-import com.pushtechnology.diffusion.client.session.Session;
-import com.pushtechnology.diffusion.client.session.SessionFactory;
 import com.pushtechnology.diffusion.client.topics.details.TopicSpecification;
 import com.pushtechnology.diffusion.client.topics.details.TopicType;
 import com.pushtechnology.diffusion.datatype.DataType;
@@ -20,12 +16,18 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static java.util.Arrays.asList;
 
@@ -33,7 +35,13 @@ import static java.util.Arrays.asList;
  *
  * @author adam
  */
-public class Main {
+public class Main implements IngestPipeline.Feeder {
+
+    private static final Log LOG = Log.get("main");
+    // Per-file and per-update messages, which can be enabled separately
+    private static final Log FILE_LOG = Log.get("file");
+    private static final Log UPDATE_LOG = Log.get("update");
+    private static final Log CACHE_LOG = Log.get("cache");
 
     private final String url;
     private final String principal;
@@ -51,31 +59,106 @@ public class Main {
     private final boolean topicIsTimeSeries;
     private final String filename;
 
+    // How files are split into records; splitLines unless the whole file is one record
+    private final Framer.Format format;
     private final boolean splitLines;
     private final boolean deleteFiles;
     private final long sleep;
     private final boolean repeat;
     private final boolean useCache;
+    private final boolean cacheValues;
+    private final OffHeapStore offHeapStore;
     private final long cacheSleep;
+    private final boolean watch;
+    private final long watchPoll;
+    // Replaced at the start of each phase of a --scenario
+    private volatile Pacer pacer;
     private final int batchSize;
+    private final boolean adaptiveBatch;
+    private final long latencyTarget;
     private final boolean streamUpdates;
 
-    private Session session;
+    private final int scanThreads;
+    private final int readThreads;
+    private final int decodeThreads;
+    private final int publishThreads;
+    private final int queueSize;
+    private final int provisionWindow;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private ConsistentHash<Shard> shardRing;
     private final Statistics statistics;
 
-    ArrayList<CompletableFuture<?>> futures = new ArrayList<>(100);
 
-    private TopicControl topicControl = null;
-    private TopicUpdate topicUpdate = null;
 
-    private TopicSpecification topicSpec = null;
+    private TopicProvisioner provisioner = null;
+    // During the first pass, topics are requested as the files are scanned
+    private volatile boolean provisioning = false;
+
+    private final String publisherType;
 
     private final Tree<ChunkSupplier> cache;
-    private final Map<String, UpdateStream> updateStreams;
+
+    // With --watch: the watcher, and how far each newline-delimited file has been read
+    private DirectoryWatcher watcher = null;
+    private final Map<Path, Long> tailOffsets = new ConcurrentHashMap<>();
+
+    // With --checkpoint: progress through each file, and whether the first pass is resuming from it
+    private final String checkpointFile;
+    private final Checkpoint checkpoint;
+
+    // With --skipunchanged: the last value sent to each topic
+    private final Fingerprints fingerprints;
+
+    // With --timestamp: schedules records by their event timestamps
+    private final ReplayClock replay;
+    // With --timestamp, the files found in this pass, to warn if they can't be replayed together
+    private final AtomicInteger replayFiles = new AtomicInteger();
+
+    // Buckets in the timing wheel used by --schedule
+    private static final int SCHEDULE_WHEEL_SIZE = 4096;
+    // With --scenario, the longest to wait at the end of a phase for its updates to be acknowledged
+    private static final long PHASE_DRAIN_SECONDS = 10;
+
+    private final UpdateSchedule schedule;
+    private final TimingWheel<Tree<ChunkSupplier>.TreeNode<ChunkSupplier>> wheel;
+    // Called with nodes added to the cache while they are being updated; guarded by the cache
+    private Consumer<Tree<ChunkSupplier>.TreeNode<ChunkSupplier>> onCached = null;
+    private final AtomicLong unscheduled = new AtomicLong();
+
+    // With --generate: a generator for each cached topic, made from its file
+    private final boolean generate;
+    private final int mutations;
+    private final int payloadSize;
+    private final Map<Tree<ChunkSupplier>.TreeNode<ChunkSupplier>, PayloadGenerator> generators = new ConcurrentHashMap<>();
+
+    // With --shard: which of the topics for the tree this process publishes to
+    private final ProcessShard processShard;
+
+    // With --scenario: the phases to run from the cache, and where to report on them
+    private final Scenario scenario;
+    private final Path reportFile;
+    private final int maxInFlight;
+    private final CountDownLatch scenarioDone = new CountDownLatch(1);
+
+    // With --conflate: the latest value waiting for each topic
+    private final ConflatingQueue conflation;
+
+    // With --virtualthreads: a virtual thread per file, and per topic when repeating from the cache
+    private final boolean virtualThreads;
+    // With --maxinflight: the limit on updates outstanding across all sessions
+    private final InFlightLimiter globalInFlight;
+    private final CountDownLatch stopping = new CountDownLatch(1);
+    private volatile boolean stopped = false;
+    // Guarded by this
+    private boolean closed = false;
+    private volatile boolean resuming;
 
     private final Random rnd = new Random();
 
     public Main(final OptionSet options) {
+        Log.configure((String) options.valueOf("loglevel"), (Integer) options.valueOf("lograte"));
+
         url = (String) options.valueOf("url");
         principal = (String) options.valueOf("principal");
         credentials = (String) options.valueOf("credentials");
@@ -122,22 +205,187 @@ public class Main {
         topicPublishOnly = options.has("publishonly");
         topicIsTimeSeries = options.has("timeseries");
         filename = (String) options.valueOf("file");
-
-        splitLines = options.has("newline");
+        processShard = options.has("shard") ? ProcessShard.parse((String) options.valueOf("shard")) : null;
+
+        scenario = options.has("scenario") ? readScenario((String) options.valueOf("scenario")) : null;
+        reportFile = scenario == null ? null
+                : Paths.get(options.has("report") ? (String) options.valueOf("report") : options.valueOf("scenario") + ".report.json");
+        generate = options.has("generate");
+        mutations = (Integer) options.valueOf("mutations");
+        payloadSize = (Integer) options.valueOf("payloadsize");
+        if(generate && (options.has("newline") || options.has("format"))) {
+            LOG.warn("--generate uses each file whole as a template, ignoring --newline and --format");
+        }
+        format = generate ? Framer.Format.WHOLE
+                : options.has("newline") ? Framer.Format.LINES
+                : Framer.Format.valueOf(((String) options.valueOf("format")).toUpperCase());
+        splitLines = format != Framer.Format.WHOLE;
         sleep = (Long) options.valueOf("sleep");
-        repeat = options.has("repeat");
-        useCache = options.has("cache");
+        // Generated values and scenarios are sent from the cache until stopped
+        repeat = options.has("repeat") || generate || scenario != null;
+        useCache = options.has("cache") || generate || scenario != null;
+        cacheValues = options.has("cachevalues");
+        long cacheBytes = (Long) options.valueOf("cachebytes");
+        offHeapStore = useCache && cacheBytes > 0 ? new OffHeapStore(cacheBytes) : null;
         cacheSleep = (Long) options.valueOf("cachesleep");
-        batchSize = (Integer) options.valueOf("batch");
+        watch = options.has("watch");
+        watchPoll = (Long) options.valueOf("watchpoll");
+        checkpointFile = (String) options.valueOf("checkpoint");
+        checkpoint = checkpointFile != null ? openCheckpoint(checkpointFile, (Long) options.valueOf("checkpointinterval")) : null;
+        resuming = checkpoint != null;
+        fingerprints = options.has("skipunchanged") ? new Fingerprints() : null;
+        if(options.has("timestamp")) {
+            String speed = (String) options.valueOf("speed");
+            replay = new ReplayClock((String) options.valueOf("timestamp"),
+                                     parseTimeUnit((String) options.valueOf("timestampunit")),
+                                     "max".equalsIgnoreCase(speed) ? Double.POSITIVE_INFINITY : Double.parseDouble(speed));
+        }
+        else {
+            replay = null;
+        }
+        if(options.has("schedule") && !(useCache && repeat)) {
+            LOG.warn("--schedule requires --cache and --repeat, ignoring");
+        }
+        if(scenario != null && (options.has("schedule") || options.has("virtualthreads"))) {
+            LOG.warn("--scenario decides how topics are updated from the cache, ignoring --schedule and --virtualthreads after the first pass");
+        }
+        virtualThreads = options.has("virtualthreads");
+        if(options.has("schedule") && useCache && repeat) {
+            @SuppressWarnings("unchecked")
+            List<String> rules = (List<String>) options.valuesOf("schedule");
+            schedule = new UpdateSchedule(rules);
+            // Virtual-thread feeders pace themselves
+            wheel = virtualThreads ? null
+                    : new TimingWheel<>(TimeUnit.MILLISECONDS.toNanos((Long) options.valueOf("scheduletick")), SCHEDULE_WHEEL_SIZE);
+        }
+        else {
+            schedule = null;
+            wheel = null;
+        }
+        if(options.has("rate") && !((Double) options.valueOf("rate") > 0)) {
+            throw new IllegalArgumentException("--rate must be greater than zero: " + options.valueOf("rate"));
+        }
+        pacer = options.has("rate")
+                ? new Pacer((Double) options.valueOf("rate"),
+                            Pacer.Profile.valueOf(((String) options.valueOf("profile")).toUpperCase()),
+                            (Integer) options.valueOf("burstsize"))
+                : null;
+        batchSize = Math.max(1, (Integer) options.valueOf("batch"));
+        adaptiveBatch = options.has("adaptive");
+        latencyTarget = (Long) options.valueOf("latencytarget");
         streamUpdates = options.has("stream");
+        maxInFlight = (Integer) options.valueOf("maxinflight");
+        // Phases of a scenario may change the overall limit
+        globalInFlight = maxInFlight > 0 || (scenario != null && scenario.getPhases().stream().anyMatch(phase -> phase.inFlight > 0))
+                ? new InFlightLimiter(maxInFlight > 0 ? maxInFlight : Integer.MAX_VALUE)
+                : null;
+
+        scanThreads = (Integer) options.valueOf("scanthreads");
+        readThreads = (Integer) options.valueOf("readthreads");
+        decodeThreads = (Integer) options.valueOf("decodethreads");
+        publishThreads = (Integer) options.valueOf("publishthreads");
+        queueSize = (Integer) options.valueOf("queuesize");
+        provisionWindow = (Integer) options.valueOf("provisionwindow");
 
         cache = new Tree<>();
-        updateStreams = new HashMap<>();
 
-        statistics = new Statistics();
+        // Each session has its own window of outstanding updates
+        publisherType = ((String) options.valueOf("publisher")).toLowerCase();
+        final long ackLatency = (Long) options.valueOf("acklatency");
+        final int ackQueue = (Integer) options.valueOf("ackqueue");
+        int sessions = Math.max(1, (Integer) options.valueOf("sessions"));
+        for(int i = 0; i < sessions; i++) {
+            Publisher publisher;
+            switch(publisherType) {
+                case "null":
+                    publisher = new NullPublisher();
+                    break;
+                case "simulated":
+                    publisher = new SimulatedPublisher(ackLatency, ackQueue);
+                    break;
+                case "recording":
+                    publisher = new RecordingPublisher();
+                    break;
+                case "diffusion":
+                    publisher = new DiffusionPublisher(i, url, principal, credentials, valueClass, this::createSpecification);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown publisher: " + publisherType);
+            }
+            shards.add(new Shard(publisher, adaptiveBatch
+                    ? new InFlightLimiter(Math.min(batchSize, 16), batchSize, true, latencyTarget)
+                    : new InFlightLimiter(batchSize)));
+        }
+        shardRing = new ConsistentHash<>(shards);
+
+        statistics = new Statistics((Integer) options.valueOf("statsperiod"),
+                                    (String) options.valueOf("statscsv"),
+                                    (String) options.valueOf("statsjson"));
+        if(options.has("summary")) {
+            statistics.setSummaryFile(Paths.get((String) options.valueOf("summary")),
+                                      processShard != null ? processShard.toString() : "0/1");
+        }
+        statistics.setInFlightSupplier(() -> shards.stream().mapToInt(shard -> shard.inFlight.getInFlight()).sum());
+        if(options.has("conflate")) {
+            // A drainer for each session, so a slow session only holds back its own topics
+            conflation = new ConflatingQueue(shards.size(), topic -> shards.indexOf(shardRing.get(topic)), this::send);
+            statistics.setConflatedSupplier(conflation::getConflated);
+            statistics.addReporter(conflation::toString);
+        }
+        else {
+            conflation = null;
+        }
+        if(wheel != null) {
+            statistics.addReporter(wheel::report);
+        }
+        if(replay != null) {
+            statistics.addReporter(replay::report);
+        }
+        if(offHeapStore != null) {
+            statistics.addReporter(offHeapStore::toString);
+            statistics.registerMBean(offHeapStore, "OffHeapStore");
+        }
+    }
+
+    private static TimeUnit parseTimeUnit(String unit) {
+        switch(unit.toLowerCase()) {
+            case "s":
+                return TimeUnit.SECONDS;
+            case "ms":
+                return TimeUnit.MILLISECONDS;
+            case "us":
+                return TimeUnit.MICROSECONDS;
+            case "ns":
+                return TimeUnit.NANOSECONDS;
+            default:
+                throw new IllegalArgumentException("Unknown timestamp unit: " + unit);
+        }
+    }
+
+    private static Scenario readScenario(String filename) {
+        try {
+            return Scenario.read(Paths.get(filename));
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException("Unable to read scenario " + filename, ex);
+        }
+    }
+
+    private static Checkpoint openCheckpoint(String filename, long interval) {
+        try {
+            Checkpoint checkpoint = new Checkpoint(Paths.get(filename), interval);
+            if(checkpoint.size() > 0) {
+                LOG.info("Resuming " + checkpoint.size() + " files from checkpoint " + filename);
+            }
+            return checkpoint;
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException("Unable to read checkpoint " + filename, ex);
+        }
     }
 
     public void showOptions() {
+        System.out.println("Publisher: \t\t\t" + publisherType);
         System.out.println("URL: \t\t\t\t" + url);
         System.out.println("Principal: \t\t\t" + principal);
         System.out.println("Credentials: \t\t\t" + credentials);
@@ -147,50 +395,55 @@ public class Main {
         System.out.println("Time series: \t\t\t" + topicIsTimeSeries);
         System.out.println("Sleep between updates: \t\t" + sleep + "ms");
         System.out.println("Sleep between updates from cache: \t" + cacheSleep + " ms");
-        System.out.println("Batch size (outstanding ACKs): \t" + batchSize);
+        System.out.println("Target rate: \t\t\t" + (pacer == null ? "none" : pacer));
+        System.out.println("Replay by timestamp: \t\t" + (replay == null ? "none" : replay));
+        System.out.println("Update schedule: \t\t" + (schedule == null ? "none" : schedule));
+        System.out.println("Scenario: \t\t\t" + (scenario == null ? "none" : scenario));
+        System.out.println("Virtual threads: \t\t" + virtualThreads);
+        System.out.println("Global in-flight limit: \t" + (globalInFlight == null ? "none" : globalInFlight.getLimit()));
+        System.out.println("Conflate pending updates: \t" + (conflation != null));
+        System.out.println("Sessions: \t\t\t" + shards.size());
+        System.out.println("Batch size (outstanding ACKs): \t" + batchSize + (shards.size() > 1 ? " per session" : ""));
+        System.out.println("Adaptive batch size: \t\t" + adaptiveBatch
+                + (adaptiveBatch ? " (target latency " + latencyTarget + "ms)" : ""));
         System.out.println("Updating using stream: \t\t" + streamUpdates);
         System.out.println("Read data from: \t\t" + filename);
+        System.out.println("Shard: \t\t\t\t" + (processShard == null ? "none" : processShard));
         System.out.println("Repeat forever: \t\t" + repeat);
+        System.out.println("Skip unchanged values: \t\t" + (fingerprints != null));
+        System.out.println("Checkpoint file: \t\t" + (checkpoint == null ? "none" : checkpointFile));
+        System.out.println("Watch for changes: \t\t" + watch + (watch && watchPoll > 0 ? " (polling every " + watchPoll + "ms)" : ""));
+        System.out.println("Cache decoded values: \t\t" + cacheValues);
+        System.out.println("Off-heap cache size: \t\t" + (offHeapStore == null ? "none" : offHeapStore.getCapacity() + " bytes"));
         System.out.println("Delete files after reading: \t" + deleteFiles);
-        System.out.println("Newline-delimited records: \t" + splitLines);
+        System.out.println("Record format: \t\t\t" + format);
+        System.out.println("Generate from templates: \t" + (generate
+                ? mutations + " change(s) per value" + (payloadSize > 0 ? ", " + payloadSize + " bytes" : "")
+                : "false"));
         System.out.println("Fixed topic name: \t\t" + fixedTopicName);
         System.out.println("Topic prefix: \t\t\t" + topicPrefix);
         System.out.println("Strip filename suffix: \t\t" + stripSuffix);
+        System.out.println("Ingest threads (scan/read/decode/publish): \t"
+                + scanThreads + "/" + readThreads + "/" + decodeThreads + "/" + publishThreads);
+        System.out.println("Ingest queue size: \t\t" + queueSize);
+        System.out.println("Topic provisioning window: \t" + provisionWindow);
     }
 
     public void connect() {
-        SessionFactory factory = Diffusion.sessions();
-        if (principal != null) {
-            factory = factory.principal(principal);
-        }
-        if (credentials != null) {
-            factory = factory.password(credentials);
-        }
-
-        while (true) {
-            try {
-                session = factory.open(url);
-            }
-            catch(Exception ex) {
-                System.out.println(ex.getMessage());
-            }
-            if (session != null && session.getState().isConnected()) {
-                System.out.println("Connected to Diffusion: " + session.getSessionId());
-                break;
-            }
-            try {
-                System.out.println("Unable to connect, retrying");
-                Thread.sleep(1000);
-            } catch (InterruptedException ignore) {
-            }
+        for(Shard shard : shards) {
+            shard.publisher.connect();
         }
     }
 
     public void init() {
-        System.out.println("init()");
-        topicControl = session.feature(TopicControl.class);
-        topicUpdate = session.feature(TopicUpdate.class);
+        LOG.debug("init()");
 
+        // Topics are created through the first session
+        provisioner = new TopicProvisioner(shards.get(0).publisher, provisionWindow);
+    }
+
+    private TopicSpecification createSpecification(TopicControl topicControl) {
+        TopicSpecification topicSpec;
         if (topicIsTimeSeries) {
             topicSpec = topicControl.newSpecification(TopicType.TIME_SERIES);
             topicSpec = topicSpec.withProperty(TopicSpecification.TIME_SERIES_EVENT_VALUE_TYPE, topicType.name());
@@ -200,14 +453,16 @@ public class Main {
         }
 
         if (topicDontRetain) {
-            System.out.println("Topic has property DONT_RETAIN_VALUE");
+            LOG.info("Topic has property DONT_RETAIN_VALUE");
             topicSpec = topicSpec.withProperty(TopicSpecification.DONT_RETAIN_VALUE, "true");
         }
 
         if (topicPublishOnly) {
-            System.out.println("Topic has property PUBLISH_VALUES_ONLY");
+            LOG.info("Topic has property PUBLISH_VALUES_ONLY");
             topicSpec = topicSpec.withProperty(TopicSpecification.PUBLISH_VALUES_ONLY, "true");
         }
+
+        return topicSpec;
     }
 
     private String calculateTopicName(String topicName) {
@@ -220,163 +475,329 @@ public class Main {
 
     private void createTopic(String topicName) {
         String topic = calculateTopicName(topicName);
-        System.out.println("Create topic: \"" + topic + "\"");
-        // topicControl.removeTopics(">" + topicName);
 
+        // Normally already requested when the file was scanned, in which case this only waits for it
         try {
-            topicControl.addTopic(topic, topicSpec).get();
-        } catch (InterruptedException | ExecutionException ex) {
-            ex.printStackTrace();
+            provisioner.provision(topic).get();
+        } catch (InterruptedException | ExecutionException ignore) {
+            // Already reported by the provisioner
         }
     }
 
-    private void createUpdateStream(String topicName) {
-        String topic = calculateTopicName(topicName);
-
-        if(updateStreams.containsKey(topic)) {
+    /**
+     * As the first pass scans the tree, request the file's topics, so that
+     * many addTopic() calls are in flight at once ahead of the files being
+     * read.
+     */
+    @Override
+    public void scanned(Path path) {
+        if(replay != null) {
+            checkReplayFiles(replayFiles.incrementAndGet());
+        }
+        if(!provisioning) {
             return;
         }
+        try {
+            for(String topicName : topicNames(path)) {
+                if(owns(topicName)) {
+                    provisioner.provision(calculateTopicName(topicName));
+                }
+            }
+        }
+        catch(IOException ex) {
+            LOG.warn("Unable to map " + path + " to a topic: " + ex.getMessage());
+        }
+    }
 
-        if (!topicIsTimeSeries && streamUpdates) {
-            try {
-                System.out.println("Creating update stream");
-
-                UpdateStream<?> updateStream = session.feature(TopicUpdate.class).createUpdateStream(topic, valueClass);
+    /**
+     * There is one replay clock, but each file's records are read and sent
+     * in order, so files are only interleaved by time if they are read at
+     * the same time. Records from a file read after others are sent late.
+     */
+    private void checkReplayFiles(int files) {
+        if(files == 2 && !virtualThreads) {
+            LOG.warn("--timestamp is replaying more than one file; files are only interleaved by time if they are read "
+                    + "at once, so records from files read later will be sent late. Use --virtualthreads, or merge the files");
+        }
+        else if(files == IngestPipeline.MAX_OPEN_FILES + 1 && virtualThreads) {
+            LOG.warn("--timestamp is replaying more than " + IngestPipeline.MAX_OPEN_FILES + " files; only that many are read "
+                    + "at once, so records from files read later will be sent late");
+        }
+    }
 
-                System.out.println("created update stream");
+    /**
+     * Report on the topics created during the first pass.
+     */
+    private void provisioned(long start) {
+        provisioning = false;
+        try {
+            provisioner.await();
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
 
-                updateStream.validate().get();
+        final long elapsed = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        LOG.info("Provisioned " + provisioner.size() + " topics in " + elapsed + "ms"
+                + " (" + (provisioner.size() * 1000L / elapsed) + "/sec"
+                + ", created=" + provisioner.getCreated()
+                + ", existing=" + provisioner.getExisting()
+                + ", failed=" + provisioner.getFailed() + ")");
+    }
 
-                System.out.println("Validated update stream");
+    private void createUpdateStream(String topicName) {
+        String topic = calculateTopicName(topicName);
 
-                updateStreams.put(topic, updateStream);
+        if (!topicIsTimeSeries && streamUpdates) {
+            try {
+                // Created on the session which will publish to the topic
+                shardRing.get(topic).publisher.createUpdateStream(topic);
             } catch (Exception ex) {
-                System.err.println("Unable to create/validate update stream for \"" + topic + "\": " + ex.getMessage());
+                LOG.warn("Unable to create/validate update stream for \"" + topic + "\": " + ex.getMessage());
                 System.exit(1);
             }
         }
     }
 
-    private void walk(Path dir) {
+    private void ingest(Path root) {
+        IngestPipeline pipeline = new IngestPipeline(this, scanThreads, readThreads, decodeThreads, publishThreads, queueSize, virtualThreads);
         try {
-            Stream<Path> fileStream = Files.list(dir);
-            fileStream.filter(path -> path.toFile().isFile())
-                    .sorted()
-                    .forEach(this::processFile);
-            fileStream.close();
-
-            fileStream = Files.list(dir);
-            fileStream.filter(path -> path.toFile().isDirectory())
-                    .sorted()
-                    .forEach(this::walk);
-            fileStream.close();
-        } catch (IOException ex) {
-            ex.printStackTrace();
+            pipeline.run(root);
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            try {
-                Thread.sleep(60000);
+    /**
+     * Process files as they are created or modified, until the watcher is
+     * closed.
+     */
+    private void watchChanges() {
+        // One pipeline for every batch, rather than new threads for each
+        IngestPipeline pipeline = new IngestPipeline(this, scanThreads, readThreads, decodeThreads, publishThreads, queueSize, virtualThreads);
+        pipeline.start();
+        try {
+            List<Path> changed;
+            while(!(changed = watcher.take()).isEmpty()) {
+                FILE_LOG.info("Processing " + changed.size() + " changed file(s)");
+                pipeline.process(changed);
             }
-            catch(InterruptedException ignore) {}
-            System.exit(1);
+            pipeline.close();
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
     }
 
     public void run() {
-        System.out.println("run()");
+        LOG.debug("run()");
 
         boolean firstRun = true;
+        Thread watchThread = null;
+
+        if(watch) {
+            // Before the first pass, so changes made during it aren't missed
+            try {
+                watcher = new DirectoryWatcher(Paths.get(filename), watchPoll);
+            }
+            catch(IOException ex) {
+                LOG.warn("Unable to watch " + filename + ": " + ex.getMessage());
+            }
+        }
 
         do {
             if(firstRun || ! useCache) {
-                if (Paths.get(filename).toFile().isFile()) {
-                    processFile(Paths.get(filename));
-                } else {
-                    walk(Paths.get(filename));
+                final long start = System.nanoTime();
+                provisioning = firstRun;
+                if(replay != null) {
+                    replay.restart();
+                    replayFiles.set(0);
+                }
+                ingest(Paths.get(filename));
+                if(firstRun) {
+                    provisioned(start);
+                }
+
+                if(firstRun && watcher != null) {
+                    watchThread = new Thread(this::watchChanges, "watch");
+                    watchThread.setDaemon(true);
+                    watchThread.start();
                 }
             }
+            else if(scenario != null) {
+                // The phases decide what is updated, and how fast
+                runScenario();
+                break;
+            }
+            else if(virtualThreads) {
+                // Each topic is updated by its own feeder, until stopped
+                runFeeders();
+                break;
+            }
+            else if(wheel != null) {
+                // Each topic is updated at its own interval, until stopped
+                runSchedule();
+                break;
+            }
             else {
                 // Using cache
-                LinkedList<Tree<ChunkSupplier>.TreeNode<ChunkSupplier>> nodesWithData = cache.getNodesWithData();
+                // Changed files may be added to the cache while it is replayed
+                List<Tree<ChunkSupplier>.TreeNode<ChunkSupplier>> nodesWithData;
+                synchronized(cache) {
+                    nodesWithData = cache.getNodesWithData();
+                }
 
                 Collections.shuffle(nodesWithData);
                 final long sleepTime = cacheSleep > -1 ? cacheSleep : sleep;
 
-                final int permits = 10;
-                Semaphore sem = new Semaphore(permits);
-                Executors.newSingleThreadScheduledExecutor()
-                                .scheduleAtFixedRate(() -> {
-                                            sem.drainPermits();
-                                            sem.release(permits);
-                                        }, 1, 1, TimeUnit.SECONDS);
-
                 nodesWithData.forEach(node -> {
-                    try {
-                        sem.acquire();
-                    } catch(InterruptedException ignore) {
-                    }
-
-//                    if (sleepTime > 0) {
-//                        try {
-//                            Thread.sleep(sleepTime);
-//                        } catch (InterruptedException ignore) {
-//                        }
-//                    }
-                    String topicName = cache.getFullName(node);
-
-                    System.out.println("++AST: Update topic:" + topicName);
-
-                    // Get some random data for this node.
-                    // If there are multiple records per file, choose a random record from this file.
-                    // Otherwise, find a topic at the same level (i.e. a sibling) and use its data.
-                    // Failing all of that, just use our own data again.
-                    byte[] data = null;
-                    if(splitLines) {
-                        data = node.data.getRandom();
-                    }
-                    else {
-                        System.out.println("++AST: Choose random sibling");
-                        // Choose a random sibling to get data for. If there are no other siblings, just use own
-                        // own data again.
-                        LinkedList<Tree<ChunkSupplier>.TreeNode<ChunkSupplier>> siblings = cache.getSiblings(node);
-                        if(siblings.size() > 0) {
-                            int i = rnd.nextInt(siblings.size());
-                            System.out.println("++AST: Sibling name:" + siblings.get(i).name);
-                            System.out.println("++AST: data=" + siblings.get(i).data);
-                            data = siblings.get(i).data.getAll();
-                        }
-                        else {
-                            if(data == null) {
-                                System.out.println("++AST: No data");
-                                data = node.data.get();
-                            }
+                    // With --rate, publish() paces the updates
+                    if (pacer == null && sleepTime > 0) {
+                        try {
+                            Thread.sleep(sleepTime);
+                        } catch (InterruptedException ignore) {
                         }
                     }
-
-                    updateTopic(topicName, data);
+                    updateFromCache(node);
                 });
             }
 
             firstRun = false;
+            resuming = false;
 
-        } while(repeat);
+        // Without the cache, watching for changes replaces reading everything again
+        } while(repeat && (useCache || watcher == null));
 
-        statistics.stop();
-        session.close();
+        try {
+            if(watchThread != null) {
+                watchThread.join();
+            }
+            if(conflation != null) {
+                conflation.awaitEmpty();
+            }
+            for(Shard shard : shards) {
+                shard.inFlight.awaitIdle();
+            }
+            if(globalInFlight != null) {
+                globalInFlight.awaitIdle();
+            }
+        } catch (InterruptedException ignore) {
+        }
+
+        close();
     }
 
     public void stop() {
-        System.out.println("stop()");
+        LOG.debug("stop()");
+
+        stopped = true;
+        stopping.countDown();
+        if(conflation != null) {
+            conflation.stop();
+        }
+        if(wheel != null) {
+            wheel.stop();
+        }
+        if(scenario != null) {
+            // Let the current phase finish, so that it is in the report
+            try {
+                scenarioDone.await(5, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if(watcher != null) {
+            watcher.close();
+        }
+
+        close();
+    }
 
+    /**
+     * Stop the statistics, save the checkpoint and close the publishers,
+     * once, whether the run finished or was stopped. A second caller waits
+     * for the first to finish.
+     */
+    private synchronized void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
         statistics.stop();
-        if(session != null) {
-            session.close();
-            System.out.println("Session closed");
+        if(checkpoint != null) {
+            checkpoint.close();
+        }
+        shards.forEach(shard -> shard.publisher.close());
+        logDropped();
+        Log.flush();
+    }
+
+    String pathToTopicName(Path path) throws IOException {
+        return toTopicName(relativeName(path));
+    }
+
+    /**
+     * @return the topic name for an entry in a zip archive, as if the
+     * archive were a directory without the ".zip" suffix
+     */
+    String entryToTopicName(Path archive, String entry) throws IOException {
+        return toTopicName(CompressedInput.entryPath(relativeName(archive), entry));
+    }
+
+    /**
+     * @return the topic names for a file, or for each entry in an archive
+     */
+    private List<String> topicNames(Path path) throws IOException {
+        if(!CompressedInput.isArchive(path.getFileName().toString())) {
+            return Collections.singletonList(pathToTopicName(path));
+        }
+
+        List<String> names = new ArrayList<>();
+        for(String entry : CompressedInput.entryNames(path)) {
+            names.add(entryToTopicName(path, entry));
+        }
+        return names;
+    }
+
+    /**
+     * With --shard, whether this process publishes the topic for a file,
+     * named before --topic and --prefix are applied.
+     */
+    private boolean owns(String topicName) {
+        return processShard == null || processShard.owns(topicName);
+    }
+
+    private boolean ownsFile(Path path) {
+        try {
+            return owns(pathToTopicName(path));
+        }
+        catch(IOException ex) {
+            FILE_LOG.warn("Unable to map " + path + " to a topic: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private boolean ownsEntry(Path archive, String entry) {
+        try {
+            return owns(entryToTopicName(archive, entry));
+        }
+        catch(IOException ex) {
+            FILE_LOG.warn("Unable to map " + entry + " in " + archive + " to a topic: " + ex.getMessage());
+            return false;
         }
     }
 
-    private String pathToTopicName(Path path) throws IOException {
+    private String relativeName(Path path) throws IOException {
         String leading = new File(filename).getCanonicalFile().getParent();
-        String name = new File(path.toFile().getCanonicalFile().toString().substring(leading.length())).toString();
+        return new File(path.toFile().getCanonicalFile().toString().substring(leading.length())).toString();
+    }
+
+    private String toTopicName(String name) {
+        // A compressed file's topic is named after its uncompressed content
+        name = CompressedInput.stripCompression(name);
 
         if(stripSuffix) {
             int idx = name.lastIndexOf('.');
@@ -392,9 +813,60 @@ public class Main {
         return name;
     }
 
-    public void processFile(Path path) {
-        System.out.println("Processing file: " + path);
+    /**
+     * Receives each chunk read from a file.
+     */
+    interface RecordSink {
+        /**
+         * @param due        when to publish the chunk on the System.nanoTime()
+         *                   clock, or zero for as soon as possible
+         * @param onComplete if not null, to be called with whether the chunk
+         *                   was published, once it has been acknowledged or
+         *                   has failed
+         */
+        void accept(String topic, byte[] bytes, long due, Consumer<Boolean> onComplete);
+    }
+
+    /**
+     * Create the topic for a file and pass each chunk of its content to
+     * {@code sink}, sleeping between chunks if required.
+     */
+    @Override
+    public void processFile(Path path, RecordSink sink) {
+        final String name = path.getFileName().toString();
+        // An archive's entries are shared out individually
+        if(processShard != null && !CompressedInput.isArchive(name) && !ownsFile(path)) {
+            return;
+        }
+
+        FILE_LOG.debug(() -> "Processing file: " + path);
+
+        final boolean processed;
+        if(CompressedInput.isArchive(name)) {
+            processed = processArchive(path, sink);
+        }
+        else if(CompressedInput.isCompressed(name) || (splitLines && format != Framer.Format.LINES)) {
+            processed = processStreamed(path, sink);
+        }
+        else {
+            processed = processPlainFile(path, sink);
+        }
 
+        if(processed && deleteFiles) {
+            if(processShard != null && CompressedInput.isArchive(name)) {
+                // Other processes may own some of its entries
+                FILE_LOG.debug(() -> "Not deleting shared archive " + path);
+            }
+            else if(path.toFile().delete()) {
+                FILE_LOG.debug(() -> "Deleted file " + path);
+            }
+            else {
+                FILE_LOG.warn("Failed to delete file " + path);
+            }
+        }
+    }
+
+    private boolean processPlainFile(Path path, RecordSink sink) {
         try {
             String topicName = pathToTopicName(path);
             createTopic(topicName);
@@ -403,45 +875,225 @@ public class Main {
             }
         }
         catch(IOException ex) {
-            ex.printStackTrace();
+            FILE_LOG.warn("Unable to create topic for " + path + ": " + ex.getMessage());
         }
 
-        byte[] bytes = readFileContent(path);
+        // Published in full before a restart; only needed for the cache
+        final boolean complete = resuming && !splitLines && checkpoint.isComplete(path);
+        if(complete && !useCache) {
+            FILE_LOG.debug(() -> "Already published: " + path);
+            return true;
+        }
+
+        final long start = startOffset(path);
+        ChunkSupplier supplier = createSupplier(path, start);
+        if(supplier == null) {
+            return false;
+        }
+        final Checkpoint.Progress progress = checkpoint != null ? checkpoint.track(path) : null;
 
         try {
             String topicName = pathToTopicName(path);
 
-            ChunkSupplier supplier = new ChunkSupplier(bytes, splitLines);
-
             if(useCache) {
-                cache.add(topicName, supplier);
+                // The cache holds all of the file, not just what has been appended
+                ChunkSupplier cached = start > 0 ? new ChunkSupplier(readAppended(topicName, path)) : supplier;
+                cacheData(topicName, cached);
             }
 
             byte[] chunk;
-            while((chunk = supplier.get()) != null) {
-                updateTopic(topicName, chunk);
+            while(!complete && (chunk = supplier.get()) != null) {
+                emit(topicName, chunk, supplier.getChunkStart(), supplier.getChunkEnd(), progress, sink);
+            }
+            return true;
+        }
+        catch(IOException ex) {
+            FILE_LOG.warn("Unable to process file: " + ex.getMessage());
+            return false;
+        }
+        finally {
+            if(progress != null) {
+                progress.read();
+            }
+        }
+    }
 
-                if(sleep > 0) {
-                    try {
-                        Thread.sleep(sleep);
-                    } catch (InterruptedException ignore) {
-                    }
-                }
+    /**
+     * Read all of a file which has been appended to, for the cache. If the
+     * cache already holds the file's records, their index is extended from
+     * where it ended rather than the whole file being indexed again.
+     */
+    private MappedRecordReader readAppended(String topicName, Path path) throws IOException {
+        Records cached = null;
+        synchronized(cache) {
+            Tree<ChunkSupplier>.TreeNode<ChunkSupplier> node = cache.get(topicName);
+            if(node != null && node.data != null) {
+                cached = node.data.getRecords();
             }
+        }
+        if(cached instanceof MappedRecordReader && ((MappedRecordReader) cached).getPath().equals(path)) {
+            return new MappedRecordReader((MappedRecordReader) cached);
+        }
+        return new MappedRecordReader(path, 0, true);
+    }
 
-            if(deleteFiles) {
-                if(path.toFile().delete()) {
-                    System.out.println("Deleted file " + path);
+    /**
+     * Read a file from start to end, inflating a gzip or deflate file as it
+     * is read. Only newline-delimited files are memory-mapped and indexed;
+     * other formats are framed as they are streamed.
+     */
+    private boolean processStreamed(Path path, RecordSink sink) {
+        try (InputStream in = CompressedInput.open(path)) {
+            processStream(path, pathToTopicName(path), in, sink);
+            return true;
+        }
+        catch(IOException ex) {
+            FILE_LOG.warn("Unable to process file " + path + ": " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Process each entry in a zip archive as if it were a file in a
+     * directory. Entries which are themselves compressed are inflated too.
+     */
+    private boolean processArchive(Path path, RecordSink sink) {
+        try {
+            CompressedInput.forEachEntry(path, entry -> ownsEntry(path, entry),
+                    (entry, in) -> processStream(path.resolve(entry), entryToTopicName(path, entry), in, sink));
+            return true;
+        }
+        catch(IOException ex) {
+            FILE_LOG.warn("Unable to process archive " + path + ": " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Process content which can only be read in order, such as a compressed
+     * file's. Unless the format is WHOLE, records are split from the stream
+     * as it is read, so the whole content is never held in memory unless it
+     * is cached.
+     *
+     * @param path identifies the content in the checkpoint
+     */
+    private void processStream(Path path, String topicName, InputStream in, RecordSink sink) throws IOException {
+        createTopic(topicName);
+        if (streamUpdates) {
+            createUpdateStream(topicName);
+        }
+
+        final Checkpoint.Progress progress = checkpoint != null ? checkpoint.track(path) : null;
+        try {
+            processStream(path, topicName, in, progress, sink);
+        }
+        finally {
+            if(progress != null) {
+                progress.read();
+            }
+        }
+    }
+
+    private void processStream(Path path, String topicName, InputStream in, Checkpoint.Progress progress, RecordSink sink)
+            throws IOException {
+        if(splitLines) {
+            // Records before the checkpoint still have to be read, but aren't published again
+            final long resumeFrom = resuming ? checkpoint.getOffset(path, Long.MAX_VALUE) : 0;
+            final RecordList cached = useCache ? new RecordList() : null;
+            format.create().forEachRecord(in, path.toString(), (record, start, end) -> {
+                if(cached != null) {
+                    cached.add(record, start, end);
                 }
-                else {
-                    System.out.println("Failed to delete file " + path);
+                if(start >= resumeFrom) {
+                    emit(topicName, record, start, end, progress, sink);
                 }
+            });
+            if(cached != null) {
+                cacheData(topicName, new ChunkSupplier(cached));
             }
         }
-        catch(IOException ex) {
-            System.err.println("Unable to process file: " + ex.getMessage());
+        else {
+            byte[] content = CompressedInput.readAll(in);
+            if(useCache) {
+                cacheData(topicName, new ChunkSupplier(content));
+            }
+            if(resuming && checkpoint.isComplete(path, content.length)) {
+                FILE_LOG.debug(() -> "Already published: " + path);
+                return;
+            }
+            emit(topicName, content, 0, content.length, progress, sink);
+        }
+    }
+
+    /**
+     * Pass a chunk to the sink, with when to publish it and how to record
+     * its acknowledgement, sleeping afterwards if required.
+     */
+    private void emit(String topicName, byte[] chunk, long start, long end, Checkpoint.Progress progress, RecordSink sink) {
+        long due = 0;
+        if(replay != null) {
+            long timestamp = replay.timestamp(chunk);
+            due = replay.due(timestamp);
+            chunk = replay.strip(chunk, timestamp);
+            if(chunk.length == 0 && end > start) {
+                // Only a timestamp, so there's nothing to publish
+                if(progress != null) {
+                    progress.sent(start, end).accept(true);
+                }
+                return;
+            }
+        }
+        sink.accept(topicName, chunk, due, progress != null ? progress.sent(start, end) : null);
+
+        if(pacer == null && replay == null && sleep > 0) {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException ignore) {
+            }
         }
+    }
 
+    /**
+     * Where to start reading a newline-delimited file: with --watch, after
+     * what has already been read; when resuming, after what was acknowledged
+     * before the restart; otherwise zero.
+     */
+    private long startOffset(final Path path) {
+        if(!splitLines) {
+            return 0;
+        }
+        Long offset = watcher != null ? tailOffsets.get(path.toAbsolutePath().normalize()) : null;
+        if(offset == null && resuming) {
+            return checkpoint.getOffset(path);
+        }
+        if(offset == null || offset > path.toFile().length()) {
+            // New, or truncated and rewritten
+            return 0;
+        }
+        return offset;
+    }
+
+    private ChunkSupplier createSupplier(final Path path, final long start) {
+        if(splitLines) {
+            // Map the file rather than reading it, so records are copied out one at a time
+            try {
+                // When watching, a final line with no newline may still be being written
+                MappedRecordReader records = new MappedRecordReader(path, start, watcher != null);
+                if(watcher != null) {
+                    tailOffsets.put(path.toAbsolutePath().normalize(), records.offset(records.size()));
+                }
+                return new ChunkSupplier(records);
+            } catch (IOException ex) {
+                FILE_LOG.warn("IOException while mapping " + path + ": " + ex.getMessage());
+                return null;
+            }
+        }
+
+        byte[] bytes = readFileContent(path);
+        if(bytes == null) {
+            return null;
+        }
+        return offHeapStore != null ? new ChunkSupplier(bytes, offHeapStore, path) : new ChunkSupplier(bytes);
     }
 
     private byte[] readFileContent(final Path path) {
@@ -449,39 +1101,348 @@ public class Main {
         try {
             bytes = Files.readAllBytes(path);
         } catch (IOException ex) {
-            System.err.println("IOException while reading " + path + ": " + ex.getMessage());
+            FILE_LOG.warn("IOException while reading " + path + ": " + ex.getMessage());
         }
         return bytes;
     }
 
-    private void waitForFutures() {
-        CompletableFuture<?> future = futures.get(0);
+    /**
+     * Update a topic from the cache: a random record from its file with
+     * --newline, otherwise the data of a random sibling.
+     */
+    private void updateFromCache(Tree<ChunkSupplier>.TreeNode<ChunkSupplier> node) {
+        updateFromCache(node, null);
+    }
+
+    /**
+     * @param onComplete if not null, called with whether the update
+     *                   succeeded once it has been acknowledged or has
+     *                   failed, or straight away if there is nothing to send
+     */
+    private void updateFromCache(Tree<ChunkSupplier>.TreeNode<ChunkSupplier> node, Consumer<Boolean> onComplete) {
+        String topicName = cache.getFullName(node);
+
+        // With --generate, the next value from the topic's template instead
+        PayloadGenerator generator = generators.get(node);
+        if(generator != null) {
+            updateTopic(topicName, generator.next(), onComplete);
+            return;
+        }
 
+        // Get some random data for this node.
+        // If there are multiple records per file, choose a random record from this file.
+        // Otherwise, find a topic at the same level (i.e. a sibling) and use its data.
+        // Failing all of that, just use our own data again.
+        ChunkSupplier source = node.data;
+        if(!splitLines) {
+            // Choose a random sibling to get data for. If there are no other siblings, just use own
+            // own data again.
+            Tree<ChunkSupplier>.TreeNode<ChunkSupplier> sibling;
+            synchronized(cache) {
+                sibling = cache.getRandomSibling(node, rnd);
+            }
+            if(sibling != null) {
+                source = sibling.data;
+            }
+            final String sourceName = sibling != null ? sibling.name : null;
+            CACHE_LOG.trace(() -> "Update " + topicName + " from " + (sourceName != null ? "sibling " + sourceName : "its own data"));
+        }
+
+        if(cacheValues) {
+            // Values are decoded once and shared by every topic that uses this data
+            Function<byte[], Object> decoder = bytes -> decode(topicName, bytes);
+            ChunkSupplier.Value value = splitLines
+                    ? source.getRandomValue(this::stripTimestamp, decoder)
+                    : source.getValue(this::stripTimestamp, decoder);
+            if(value != null && !skipUnchanged(topicName, value.fingerprint)) {
+                publish(topicName, value.value, value.size, 0, onComplete);
+                return;
+            }
+        }
+        else {
+            byte[] data = splitLines ? source.getRandom() : source.getAll();
+            if(data != null && (data = stripTimestamp(data)) != null) {
+                updateTopic(topicName, data, onComplete);
+                return;
+            }
+        }
+        if(onComplete != null) {
+            onComplete.accept(true);
+        }
+    }
+
+    /**
+     * The cache holds records as they were read, so with --timestamp prefix,
+     * remove the prefix from a cached record before it is published. Cached
+     * records are not scheduled by their timestamps.
+     *
+     * @return the record, or null if it held only a timestamp
+     */
+    private byte[] stripTimestamp(byte[] data) {
+        if(replay == null) {
+            return data;
+        }
+        byte[] stripped = replay.strip(data, replay.timestamp(data));
+        return stripped.length == 0 && data.length > 0 ? null : stripped;
+    }
+
+    /**
+     * With --scenario, update topics from the cache as each phase directs,
+     * then report on the phases. The report is rewritten after each phase, so
+     * it covers the phases run so far if the feeder is stopped.
+     */
+    private void runScenario() {
+        List<StatsSummary> results = new ArrayList<>();
         try {
-            // Wait until we've got it
-            future.get();
-        } catch (InterruptedException | ExecutionException ex) {
-            ex.printStackTrace();
+            for(Scenario.Phase phase : scenario.getPhases()) {
+                if(stopped) {
+                    break;
+                }
+                LOG.info("Starting phase " + phase);
+                StatsSummary result = runPhase(phase);
+                results.add(result);
+                LOG.info("Finished phase " + result);
+                writeReport(results);
+            }
+            pacer = null;
+            if(globalInFlight != null) {
+                globalInFlight.setLimit(maxInFlight > 0 ? maxInFlight : Integer.MAX_VALUE);
+            }
+            LOG.info("Scenario complete");
+            for(StatsSummary result : results) {
+                LOG.info("  " + result);
+            }
+        }
+        finally {
+            scenarioDone.countDown();
+        }
+    }
+
+    private StatsSummary runPhase(Scenario.Phase phase) {
+        List<Tree<ChunkSupplier>.TreeNode<ChunkSupplier>> nodes;
+        synchronized(cache) {
+            nodes = cache.getNodesWithData();
+        }
+        nodes.removeIf(node -> !phase.includes(calculateTopicName(cache.getFullName(node))));
+        if(nodes.isEmpty() && !phase.isIdle()) {
+            LOG.warn("No topics match phase " + phase.name);
+        }
+
+        if(globalInFlight != null) {
+            globalInFlight.setLimit(phase.inFlight > 0 ? phase.inFlight : maxInFlight > 0 ? maxInFlight : Integer.MAX_VALUE);
         }
+        pacer = phase.createPacer();
+        statistics.startPhase();
 
-        // Remove any other "done" futures from the list
-        while(futures.size() > 0) {
-            future = futures.get(0);
-            if (future.isDone()) {
-                futures.remove(0);
+        final long end = System.nanoTime() + phase.durationNanos;
+        if(phase.isIdle() || nodes.isEmpty()) {
+            try {
+                stopping.await(phase.durationNanos, TimeUnit.NANOSECONDS);
             }
-            else {
-                break;
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        else {
+            updates:
+            while(true) {
+                Collections.shuffle(nodes);
+                for(Tree<ChunkSupplier>.TreeNode<ChunkSupplier> node : nodes) {
+                    // With a rate, publish() paces the updates
+                    if(stopped || System.nanoTime() - end >= 0) {
+                        break updates;
+                    }
+                    updateFromCache(node);
+                }
+            }
+        }
+
+        if(!stopped) {
+            awaitPhaseAcks(phase);
+        }
+        return statistics.endPhase(phase.name);
+    }
+
+    /**
+     * Wait, for a while, for the updates sent in a phase to be acknowledged,
+     * so that they are counted in that phase rather than the next.
+     */
+    private void awaitPhaseAcks(Scenario.Phase phase) {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(PHASE_DRAIN_SECONDS);
+        try {
+            boolean idle = conflation == null || conflation.awaitEmpty(end - System.nanoTime(), TimeUnit.NANOSECONDS);
+            for(Shard shard : shards) {
+                idle = idle && shard.inFlight.awaitIdle(end - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            if(idle && globalInFlight != null) {
+                idle = globalInFlight.awaitIdle(end - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            if(!idle) {
+                LOG.warn("Updates from phase " + phase.name + " still unacknowledged after " + PHASE_DRAIN_SECONDS
+                        + "s will be counted in the next phase");
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeReport(List<StatsSummary> results) {
+        StringBuilder report = new StringBuilder("{\"phases\":[\n");
+        for(int i = 0; i < results.size(); i++) {
+            report.append(results.get(i).toJson("phase")).append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        report.append("]}\n");
+        // Written beside the report and then moved over it, so the report is never left half written
+        Path tmp = reportFile.resolveSibling(reportFile.getFileName() + ".tmp");
+        try {
+            Files.write(tmp, report.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, reportFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, reportFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch(IOException ex) {
+            LOG.warn("Unable to write scenario report " + reportFile + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * With --schedule, put every cached topic on the timing wheel and fire
+     * updates until stopped. Topics added to the cache meanwhile are
+     * scheduled as they are added.
+     */
+    private void runSchedule() {
+        synchronized(cache) {
+            cache.getNodesWithData().forEach(this::scheduleNode);
+            onCached = this::scheduleNode;
+        }
+        LOG.info("Scheduled " + wheel.size() + " topics"
+                + (unscheduled.get() > 0 ? ", " + unscheduled.get() + " match no schedule and won't be updated" : ""));
+
+        wheel.run(node -> {
+            if(node.data == null) {
+                return false;
+            }
+            updateFromCache(node);
+            return true;
+        });
+    }
+
+    private void scheduleNode(Tree<ChunkSupplier>.TreeNode<ChunkSupplier> node) {
+        long interval = schedule.intervalNanos(calculateTopicName(cache.getFullName(node)));
+        if(interval < 0) {
+            unscheduled.incrementAndGet();
+        }
+        else {
+            wheel.schedule(node, interval);
+        }
+    }
+
+    /**
+     * With --virtualthreads, start a feeder for every cached topic and wait
+     * until stopped. Topics added to the cache meanwhile get feeders as they
+     * are added.
+     */
+    private void runFeeders() {
+        try (ExecutorService feeders = Executors.newVirtualThreadPerTaskExecutor()) {
+            synchronized(cache) {
+                onCached = node -> startFeeder(feeders, node);
+                cache.getNodesWithData().forEach(onCached);
+            }
+            LOG.info("Started feeders for " + cache.size() + " topics"
+                    + (unscheduled.get() > 0 ? ", " + unscheduled.get() + " match no schedule and won't be updated" : ""));
+
+            stopping.await();
+            synchronized(cache) {
+                onCached = null;
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startFeeder(ExecutorService feeders, Tree<ChunkSupplier>.TreeNode<ChunkSupplier> node) {
+        final long interval;
+        if(schedule != null) {
+            interval = schedule.intervalNanos(calculateTopicName(cache.getFullName(node)));
+            if(interval < 0) {
+                unscheduled.incrementAndGet();
+                return;
             }
         }
+        else {
+            interval = TimeUnit.MILLISECONDS.toNanos(cacheSleep > -1 ? cacheSleep : sleep);
+        }
+        feeders.execute(new TopicFeeder(cache.getFullName(node), interval,
+                onComplete -> updateFromCache(node, onComplete),
+                () -> !stopped && node.data != null));
     }
 
-    private void updateTopic(final String topicPath, final byte[] bytes) {
-        // Don't update if there are too many futures outstanding
-        if(futures.size() >= batchSize) {
-            waitForFutures();
+    /**
+     * Add data to the cache, and if its topic is new and the cache is being
+     * replayed by --schedule or --virtualthreads, start updating it. With
+     * --generate, the data becomes the topic's template.
+     */
+    private void cacheData(String topicName, ChunkSupplier supplier) {
+        PayloadGenerator generator = null;
+        byte[] template = generate ? supplier.getAll() : null;
+        if(template != null) {
+            generator = new PayloadGenerator(template, mutations, payloadSize, ThreadLocalRandom.current().nextLong());
+            final PayloadGenerator created = generator;
+            CACHE_LOG.debug(() -> "Generating values for " + topicName + " from a " + created);
         }
 
+        synchronized(cache) {
+            Tree<ChunkSupplier>.TreeNode<ChunkSupplier> existing = cache.get(topicName);
+            boolean added = existing == null || existing.data == null;
+            Tree<ChunkSupplier>.TreeNode<ChunkSupplier> node = cache.add(topicName, supplier);
+            if(generator != null && node != null) {
+                generators.put(node, generator);
+            }
+            if(added && onCached != null && node != null) {
+                onCached.accept(node);
+            }
+        }
+    }
+
+    private void updateTopic(final String topicPath, final byte[] bytes, final Consumer<Boolean> onComplete) {
+        Object value = skipUnchanged(topicPath, bytes) ? null : decode(topicPath, bytes);
+        if(value != null) {
+            publish(topicPath, value, bytes.length, 0, onComplete);
+        }
+        else if(onComplete != null) {
+            onComplete.accept(true);
+        }
+    }
+
+    /**
+     * With --skipunchanged, check whether data is the same as was last sent
+     * to its topic, so that it needn't be decoded or sent again.
+     */
+    @Override
+    public boolean skipUnchanged(final String topicPath, final byte[] bytes) {
+        return fingerprints != null && skipUnchanged(topicPath, Fingerprints.hash(bytes));
+    }
+
+    private boolean skipUnchanged(final String topicPath, final long fingerprint) {
+        if(fingerprints != null && fingerprints.unchanged(calculateTopicName(topicPath), fingerprint)) {
+            statistics.updateSkipped();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Convert raw bytes into a value of the configured topic type.
+     *
+     * @return the value, or null if the data is invalid
+     */
+    @Override
+    public Object decode(final String topicPath, final byte[] bytes) {
         Object value = null;
 
         try {
@@ -490,7 +1451,6 @@ public class Main {
                     value = new String(bytes);
                     break;
                 case JSON:
-                    System.out.println("++AST: " + topicPath + ", bytes=" + bytes);
                     value = Diffusion.dataTypes().json().fromJsonString(new String(bytes));
                     break;
                 case BINARY:
@@ -510,31 +1470,111 @@ public class Main {
             }
         }
         catch(InvalidDataException ex) {
-            System.err.println("Invalid data:" + ex.getMessage());
+            UPDATE_LOG.warn("Invalid data for " + topicPath + ": " + ex.getMessage());
         }
 
         if(value == null) {
-            System.err.println("Value for " + topicPath + " is null, ignoring");
-            return;
+            UPDATE_LOG.warn("Value for " + topicPath + " is null, ignoring");
+        }
+        return value;
+    }
+
+    void publish(final String topicPath, final Object value, final int size) {
+        publish(topicPath, value, size, 0, null);
+    }
+
+    /**
+     * @param due        when to publish on the System.nanoTime() clock, or
+     *                   zero for as soon as possible
+     * @param onComplete if not null, called with whether the update
+     *                   succeeded once it has been acknowledged or has failed
+     */
+    @Override
+    public void publish(final String topicPath, final Object value, final int size, final long due, final Consumer<Boolean> onComplete) {
+        // With a schedule or a target rate, wait for this update's slot and measure latency from then
+        final long intended;
+        if(due != 0) {
+            replay.await(due);
+            intended = due;
+        }
+        else {
+            intended = pacer != null ? pacer.awaitNext() : 0;
         }
 
         String topic = calculateTopicName(topicPath);
+        if(conflation != null) {
+            // Replaces any value for the topic still waiting, rather than waiting for the window
+            conflation.offer(topic, value, size, intended != 0 ? intended : System.nanoTime(), onComplete);
+            return;
+        }
+        send(topic, value, size, intended, onComplete);
+    }
+
+    /**
+     * Send an update once the session's window, and the global one, allow.
+     *
+     * @param intended when the update was due, on the System.nanoTime()
+     *                 clock, or zero to measure latency from now
+     */
+    private void send(final String topic, final Object value, final int size, final long intended, final Consumer<Boolean> onComplete) {
+        Shard shard = shardRing.get(topic);
+        InFlightLimiter inFlight = shard.inFlight;
+
+        // Don't update if there are too many updates outstanding, in all or through this session
+        try {
+            InFlightLimiter.acquire(globalInFlight, inFlight);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
 
+        // The window adapts to the server's latency alone, not to time spent waiting to send
+        final long sent = System.nanoTime();
+        final long due = intended != 0 ? intended : sent;
         CompletableFuture<?> result;
-        if(streamUpdates) {
-            result = updateStreams.get(topic).set(value);
+        try {
+            result = shard.publisher.set(topic, value);
         }
-        else {
-            result = topicUpdate.set(topic, valueClass, value);
+        catch(RuntimeException ex) {
+            InFlightLimiter.release(globalInFlight, inFlight, System.nanoTime() - sent, true);
+            statistics.updateAcked(0, true);
+            throw ex;
         }
 
-        futures.add(result);
+        result.whenComplete((ignore, ex) -> {
+            if(ex != null) {
+                UPDATE_LOG.warn("Update to " + topic + " failed: " + ex.getMessage());
+            }
+            final long now = System.nanoTime();
+            InFlightLimiter.release(globalInFlight, inFlight, now - sent, ex != null);
+            statistics.updateAcked(now - due, ex != null);
+            if(onComplete != null) {
+                onComplete.accept(ex == null);
+            }
+        });
 
-        statistics.getUpdateCount().incrementAndGet();
+        statistics.updateSent(size);
+        UPDATE_LOG.trace(() -> "Sent " + size + " bytes to " + topic);
     }
 
-    public static void main(final String[] args) throws Exception {
-        OptionParser optionParser = new OptionParser() {
+    /**
+     * A publisher, and the window of updates outstanding through it.
+     */
+    private static final class Shard {
+        final Publisher publisher;
+        final InFlightLimiter inFlight;
+
+        Shard(Publisher publisher, InFlightLimiter inFlight) {
+            this.publisher = publisher;
+            this.inFlight = inFlight;
+        }
+    }
+
+    /**
+     * @return a parser for the command-line options
+     */
+    static OptionParser createParser() {
+        return new OptionParser() {
             {
                 acceptsAll(asList("h", "help"),
                         "This help");
@@ -570,7 +1610,12 @@ public class Main {
                         .ofType(String.class)
                         .defaultsTo("files");
 
-                acceptsAll(asList("nl", "newline"), "Files contain multiple newline-delimited records. Process them individually.");
+                acceptsAll(asList("nl", "newline"), "Files contain multiple newline-delimited records. Process them individually. The same as --format LINES.");
+
+                acceptsAll(asList("format"), "How files are split into records: WHOLE (one record per file), LINES, VARINT or INT32 (length-prefixed), JSON (array elements) or CSV (rows as JSON objects)")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("whole");
 
                 acceptsAll(asList("s", "sleep"), "Time to sleep between each file (in ms)")
                         .withRequiredArg()
@@ -588,10 +1633,17 @@ public class Main {
 
                 acceptsAll(asList("stream"), "Use UpdateStream (not for timeseries)");
 
-                acceptsAll(asList("batch"), "Number of outstanding update ACKs, default unlimited (0/1 = sync)")
+                acceptsAll(asList("batch"), "Maximum number of outstanding update ACKs (0/1 = sync)")
                         .withRequiredArg()
                         .ofType(Integer.class)
-                        .defaultsTo(Integer.MAX_VALUE);
+                        .defaultsTo(1000);
+
+                acceptsAll(asList("adaptive"), "Adapt the number of outstanding update ACKs to the observed ACK latency, up to --batch");
+
+                acceptsAll(asList("latencytarget"), "ACK latency (in ms) above which the adaptive window shrinks")
+                        .withRequiredArg()
+                        .ofType(Long.class)
+                        .defaultsTo(100L);
 
                 acceptsAll(asList("topic"), "Fixed topic name")
                         .withRequiredArg()
@@ -604,14 +1656,237 @@ public class Main {
                 acceptsAll(asList("stripSuffix"), "Strip filename suffix from topic name");
 
                 acceptsAll(asList("delete"), "Delete file after reading");
+
+                acceptsAll(asList("scanthreads"), "Number of threads scanning directories")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(1);
+
+                acceptsAll(asList("readthreads"), "Number of threads reading files and splitting records")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(1);
+
+                acceptsAll(asList("decodethreads"), "Number of threads decoding values")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(1);
+
+                acceptsAll(asList("publishthreads"), "Number of threads publishing updates")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(1);
+
+                acceptsAll(asList("queuesize"), "Capacity of the queues between ingest stages")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(10000);
+
+                acceptsAll(asList("provisionwindow"), "Maximum number of topic creation requests in flight")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(1000);
+
+                acceptsAll(asList("statsperiod"), "Statistics reporting period (in seconds)")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(5);
+
+                acceptsAll(asList("statscsv"), "Append per-period statistics to this CSV file")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+                acceptsAll(asList("statsjson"), "Append per-period statistics to this file, one JSON object per line")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+                acceptsAll(asList("rate"), "Target update rate (updates/sec); replaces --sleep and --cachesleep")
+                        .withRequiredArg()
+                        .ofType(Double.class);
+
+                acceptsAll(asList("profile"), "Distribution of updates with --rate (CONSTANT, POISSON, BURST)")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("constant");
+
+                acceptsAll(asList("burstsize"), "Number of updates sent together with --profile BURST")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(100);
+
+                acceptsAll(asList("cachevalues"), "With --cache, cache decoded topic values so they are not parsed again on each repeat");
+
+                acceptsAll(asList("cachebytes"), "With --cache, hold file content off-heap in at most this many bytes, evicting and re-reading as needed (0 = on heap, unbounded)")
+                        .withRequiredArg()
+                        .ofType(Long.class)
+                        .defaultsTo(0L);
+
+                acceptsAll(asList("sessions"), "Number of sessions to publish through; topics are shared between them by consistent hash")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(1);
+
+                acceptsAll(asList("publisher"), "Where to publish: DIFFUSION, or in-process NULL (discard), SIMULATED (delayed acks) or RECORDING (keep in memory)")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("diffusion");
+
+                acceptsAll(asList("acklatency"), "With --publisher SIMULATED, delay before each update is acknowledged (in microseconds)")
+                        .withRequiredArg()
+                        .ofType(Long.class)
+                        .defaultsTo(1000L);
+
+                acceptsAll(asList("ackqueue"), "With --publisher SIMULATED, maximum unacknowledged updates before updates fail")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(100000);
+
+                acceptsAll(asList("schedule"), "With --cache and --repeat, update topics matching a pattern at their own interval, e.g. 'prices/**=10ms'; may be given more than once, and the first matching pattern applies")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+                acceptsAll(asList("scheduletick"), "With --schedule, the resolution of update intervals (in ms)")
+                        .withRequiredArg()
+                        .ofType(Long.class)
+                        .defaultsTo(1L);
+
+                acceptsAll(asList("virtualthreads"), "Feed each file, and with --cache and --repeat each topic, from its own virtual thread instead of the staged thread pools");
+
+                acceptsAll(asList("maxinflight"), "Limit on updates awaiting acknowledgement across all sessions (0 = only the per-session --batch limit)")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(0);
+
+                acceptsAll(asList("loglevel"), "Log level (ERROR, WARN, INFO, DEBUG or TRACE), optionally followed by levels for categories, e.g. 'info,update=debug'")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("info");
+
+                acceptsAll(asList("lograte"), "Most log messages written per category each second (0 = no limit)")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(100);
+
+                acceptsAll(asList("watch"), "After processing all files, watch for files being created or modified and process them, reading only appended lines with --newline");
+
+                acceptsAll(asList("watchpoll"), "With --watch, poll for changes at this interval (in milliseconds) rather than use file system notifications")
+                        .withRequiredArg()
+                        .ofType(Long.class)
+                        .defaultsTo(0L);
+
+                acceptsAll(asList("checkpoint"), "Record progress through each file in this file, and resume from it on restart")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+                acceptsAll(asList("checkpointinterval"), "With --checkpoint, how often to write the checkpoint file (in milliseconds)")
+                        .withRequiredArg()
+                        .ofType(Long.class)
+                        .defaultsTo(1000L);
+
+                acceptsAll(asList("skipunchanged"), "Don't send a value to a topic if it is the same as the last value sent to it");
+
+                acceptsAll(asList("timestamp"), "Publish records at the times given by their timestamps: PREFIX for a timestamp at the start of each record, or the name of a JSON field")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+                acceptsAll(asList("timestampunit"), "With --timestamp, the unit of numeric timestamps (S, MS, US or NS)")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("ms");
+
+                acceptsAll(asList("speed"), "With --timestamp, replay speed relative to the original (e.g. 0.5, 10), or MAX")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("1");
+
+                acceptsAll(asList("generate"), "Use each file as a template, and repeatedly update its topic with values generated from it by small random changes; implies --cache and --repeat");
+
+                acceptsAll(asList("mutations"), "With --generate, the number of fields (or for binary templates, bytes) changed in each value")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(1);
+
+                acceptsAll(asList("payloadsize"), "With --generate, pad JSON object templates to about this many bytes, and repeat or truncate binary templates to exactly this many (0 = the template's size)")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(0);
+
+                acceptsAll(asList("shard"), "Publish only this process's share of the topics, as index/count, e.g. 0/4 for the first of four processes")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+                acceptsAll(asList("summary"), "Write totals and the latency histogram for the whole run to this file, for --mergestats")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+                acceptsAll(asList("conflate"), "Instead of waiting for room in the in-flight window, hold the latest value for each topic and send it when there is room, discarding values it replaces");
+
+                acceptsAll(asList("scenario"), "Run the phases in this JSON file, each with its own duration, rate, in-flight limit and topics, then write a report; implies --cache and --repeat")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+                acceptsAll(asList("report"), "With --scenario, write the report to this file (default: the scenario file name with .report.json)")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+                acceptsAll(asList("mergestats"), "Combine the --summary files given as arguments into one report, and exit");
             }
         };
+    }
+
+    /**
+     * Print each summary, then their totals, with latency percentiles
+     * computed from their combined histograms.
+     *
+     * @return the exit status
+     */
+    private static int mergeStats(List<?> files) {
+        if (files.isEmpty()) {
+            System.err.println("--mergestats requires summary files");
+            return 1;
+        }
+
+        List<StatsSummary> summaries = new ArrayList<>();
+        for (Object file : files) {
+            try {
+                summaries.add(StatsSummary.read(Paths.get(file.toString())));
+            }
+            catch (IOException | IllegalArgumentException ex) {
+                System.err.println("Unable to read summary " + file + ": " + ex.getMessage());
+                return 1;
+            }
+        }
+        summaries.sort(Comparator.comparing(summary -> summary.name));
+        summaries.forEach(System.out::println);
+
+        System.out.println("Total " + StatsSummary.merge(summaries));
+        System.out.println("Sum of process rates: " + summaries.stream().mapToLong(StatsSummary::getRate).sum() + "/sec");
+        String problem = StatsSummary.checkShards(summaries);
+        if (problem != null) {
+            System.out.println("Warning: " + problem);
+        }
+        return 0;
+    }
+
+    private static void logDropped() {
+        long dropped = Log.getDropped();
+        if (dropped > 0) {
+            LOG.warn(dropped + " log messages were dropped because the console could not keep up");
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        OptionParser optionParser = createParser();
         OptionSet options = optionParser.parse(args);
         if (options.has("help")) {
             optionParser.printHelpOn(System.out);
             System.exit(0);
         }
 
+        if (options.has("mergestats")) {
+            System.exit(mergeStats(options.nonOptionArguments()));
+        }
+
         Main app = new Main(options);
         app.showOptions();
 
@@ -0,0 +1,239 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Newline-delimited records read directly from a memory-mapped file.
+ *
+ * Large files are never copied onto the heap as a whole; instead, a compact
+ * index of record start offsets is built in a single pass and each record
+ * is copied out on demand. Files larger than 2GB are mapped as a sequence
+ * of segments. Files smaller than {@link #MAP_THRESHOLD} are read onto the
+ * heap instead: each mapping uses one of the process's limited number of
+ * memory map areas (vm.max_map_count), which a large cached tree of small
+ * files would otherwise exhaust.
+ *
+ * Records are copied rather than returned as slices of the mapping because
+ * they are fingerprinted, decoded and published as byte arrays, and a
+ * record may span two segments. Each copy is only the size of one record.
+ *
+ * Records are separated by '\n', and a '\r' before it is dropped, so files
+ * with either Unix or Windows line endings can be read. Unlike
+ * BufferedReader.readLine(), a '\r' on its own is not a separator and is
+ * left in the record. A final newline does not produce an empty record.
+ * {@link LineFramer} splits streams in the same way.
+ *
+ * A reader can also start part way through a file, to read only what has
+ * been appended since an earlier reader, and can leave out a final record
+ * with no newline, which may not have been completely written yet. A file
+ * which has grown can be read again by extending an earlier reader's index
+ * from where it ended, rather than indexing the whole file again.
+ */
+class MappedRecordReader implements Records {
+
+    // Largest region mapped in one go. Must be a power of two.
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // Files with less data than this are read rather than mapped
+    static final int MAP_THRESHOLD = 1 << 20;
+
+    private final Path path;
+    private final long base;
+    private final long length;
+    private final boolean completeOnly;
+    private final ByteBuffer[] segments;
+
+    // offsets[i] is the start of record i; offsets[count] is the end of the data.
+    // Both are relative to base.
+    private long[] offsets;
+    private int count;
+
+    MappedRecordReader(Path path) throws IOException {
+        this(path, 0, false);
+    }
+
+    /**
+     * @param start        file offset of the first record; the start of a line
+     * @param completeOnly if true, leave out a final record with no newline
+     */
+    MappedRecordReader(Path path, long start, boolean completeOnly) throws IOException {
+        this.path = path;
+        this.completeOnly = completeOnly;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            length = channel.size();
+            base = Math.min(start, length);
+            segments = load(channel, base, length - base);
+        }
+
+        offsets = new long[1024];
+        count = 0;
+        buildIndex(0);
+    }
+
+    /**
+     * Read a file which has grown since {@code previous} read it, reusing
+     * the index of the records it had already read. The file must only
+     * have been appended to.
+     */
+    MappedRecordReader(MappedRecordReader previous) throws IOException {
+        this.path = previous.path;
+        this.completeOnly = previous.completeOnly;
+        this.base = previous.base;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            length = channel.size();
+            if (length < previous.base + previous.offsets[previous.count]) {
+                throw new IOException(path + " has been truncated");
+            }
+            segments = load(channel, base, length - base);
+        }
+
+        // A final record with no newline may have been added to since
+        int reuse = previous.count;
+        if (reuse > 0 && !previous.completeOnly && previous.byteAt(previous.offsets[reuse] - 1) != '\n') {
+            reuse--;
+        }
+        offsets = Arrays.copyOf(previous.offsets, Math.max(1024, reuse * 2 + 1));
+        count = reuse;
+        buildIndex(offsets[reuse]);
+    }
+
+    /**
+     * Map {@code size} bytes of a file from {@code from}, or read them if
+     * there are too few to be worth a mapping.
+     */
+    private static ByteBuffer[] load(FileChannel channel, long from, long size) throws IOException {
+        if (size == 0) {
+            return new ByteBuffer[0];
+        }
+        if (size < MAP_THRESHOLD) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, from + buffer.position()) < 0) {
+                    throw new EOFException("File truncated while reading");
+                }
+            }
+            buffer.flip();
+            return new ByteBuffer[] { buffer };
+        }
+
+        int nSegments = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        ByteBuffer[] segments = new ByteBuffer[nSegments];
+        for (int i = 0; i < nSegments; i++) {
+            long offset = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from + offset, Math.min(SEGMENT_SIZE, size - offset));
+        }
+        return segments;
+    }
+
+    /**
+     * Add the records from {@code start}, relative to base, to the index.
+     */
+    private void buildIndex(long start) {
+        long mapped = length - base;
+        for (int s = (int) (start >>> SEGMENT_SHIFT); s < segments.length; s++) {
+            ByteBuffer segment = segments[s];
+            long base = (long) s << SEGMENT_SHIFT;
+            int limit = segment.limit();
+            for (int i = (int) Math.max(0, start - base); i < limit; i++) {
+                if (segment.get(i) == '\n') {
+                    addOffset(start);
+                    start = base + i + 1;
+                }
+            }
+        }
+        if (start < mapped && !completeOnly) {
+            // Final record without a trailing newline
+            addOffset(start);
+            start = mapped;
+        }
+
+        // Sentinel: record i ends (exclusive, including any newline) at offsets[i + 1]
+        offsets = Arrays.copyOf(offsets, count + 1);
+        offsets[count] = start;
+    }
+
+    private void addOffset(long offset) {
+        if (count == offsets.length - 1) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count++] = offset;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the length of the file when it was mapped
+     */
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return the number of records in the file
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the file offset of the start of record {@code idx}; an index
+     * equal to {@link #size()} gives the end of the last record, which is
+     * where a later reader of appended data should start
+     */
+    @Override
+    public long offset(int idx) {
+        return base + offsets[idx];
+    }
+
+    /**
+     * @return the content of record {@code idx}, without the line terminator
+     */
+    @Override
+    public byte[] get(int idx) {
+        long start = offsets[idx];
+        long end = offsets[idx + 1];
+
+        // Strip the terminator (\n or \r\n), if present
+        if (end > start && byteAt(end - 1) == '\n') {
+            end--;
+            if (end > start && byteAt(end - 1) == '\r') {
+                end--;
+            }
+        }
+
+        byte[] dst = new byte[(int) (end - start)];
+        copy(start, dst);
+        return dst;
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    private void copy(long pos, byte[] dst) {
+        int done = 0;
+        while (done < dst.length) {
+            ByteBuffer segment = segments[(int) (pos >>> SEGMENT_SHIFT)];
+            int off = (int) (pos & SEGMENT_MASK);
+            int n = Math.min(dst.length - done, segment.limit() - off);
+            // Duplicate so concurrent readers don't share a position
+            segment.duplicate().position(off).get(dst, done, n);
+            done += n;
+            pos += n;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Discards all updates, acknowledging them immediately. Useful for
+ * measuring the cost of scanning, reading and decoding alone.
+ */
+class NullPublisher implements Publisher {
+
+    private static final CompletableFuture<Boolean> CREATED = CompletableFuture.completedFuture(true);
+    private static final CompletableFuture<Object> DONE = CompletableFuture.completedFuture(null);
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addTopic(String topic) {
+        return CREATED;
+    }
+
+    @Override
+    public void createUpdateStream(String topic) {
+    }
+
+    @Override
+    public CompletableFuture<?> set(String topic, Object value) {
+        return DONE;
+    }
+
+    @Override
+    public void close() {
+    }
+}
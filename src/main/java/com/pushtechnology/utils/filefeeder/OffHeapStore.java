@@ -0,0 +1,306 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded store for cached file content, held outside the Java heap.
+ *
+ * Memory is divided into one or more arenas of direct memory, each of which
+ * is written as a ring: new entries are appended at the head, and space is
+ * reclaimed from the oldest entry at the tail. Eviction follows the CLOCK
+ * policy; an entry which has been read since it was written gets a second
+ * chance and is moved to the head rather than evicted.
+ *
+ * Entries are identified by a small integer from {@link #register()}, and the
+ * location of each is held in primitive arrays rather than per-entry
+ * objects. A {@link #get(int)} which misses returns null, and the caller is
+ * expected to fetch the data again (typically from disk) and {@link #put}
+ * it back.
+ */
+class OffHeapStore implements OffHeapStoreMBean {
+
+    // Direct buffers are indexed by int, so no arena can be larger than this
+    private static final int MAX_ARENA_SIZE = 1 << 30;
+
+    private final Arena[] arenas;
+    private final long capacity;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong nextId = new AtomicLong();
+
+    OffHeapStore(long budget) {
+        int n = (int) Math.max(1, (budget + MAX_ARENA_SIZE - 1) / MAX_ARENA_SIZE);
+        arenas = new Arena[n];
+        long remaining = budget;
+        for (int i = 0; i < n; i++) {
+            int size = (int) Math.min(MAX_ARENA_SIZE, remaining);
+            arenas[i] = new Arena(size);
+            remaining -= size;
+        }
+        capacity = budget;
+    }
+
+    /**
+     * @return a new entry identifier
+     */
+    int register() {
+        return (int) nextId.getAndIncrement();
+    }
+
+    /**
+     * Store the data for an entry, evicting older entries if necessary.
+     *
+     * @return false if the data is larger than an arena, and so cannot be
+     * stored
+     */
+    boolean put(int id, byte[] data) {
+        return arena(id).put(id / arenas.length, data);
+    }
+
+    /**
+     * @return the data for an entry, or null if it is not present
+     */
+    byte[] get(int id) {
+        byte[] data = arena(id).get(id / arenas.length);
+        if (data == null) {
+            misses.incrementAndGet();
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return data;
+    }
+
+    private Arena arena(int id) {
+        return arenas[id % arenas.length];
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getUsed() {
+        long used = 0;
+        for (Arena arena : arenas) {
+            used += arena.used();
+        }
+        return used;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "cache hits=" + getHits() + " misses=" + getMisses() + " evictions=" + getEvictions()
+                + " used=" + getUsed() + "/" + capacity;
+    }
+
+    /**
+     * A single ring of direct memory.
+     *
+     * Positions are virtual and only ever increase; the physical offset is
+     * the position modulo the arena size. Entries never wrap around the end
+     * of the buffer, so the space at the end which is too small for the next
+     * entry is skipped.
+     */
+    private final class Arena {
+        private static final long ABSENT = -1;
+
+        private final ByteBuffer buffer;
+        private final int size;
+
+        // Per entry: virtual position (or ABSENT), length and whether read since written
+        private long[] positions = new long[0];
+        private int[] lengths = new int[0];
+        private boolean[] referenced = new boolean[0];
+
+        // Entries in position order, oldest first, as a ring of local ids and
+        // the position each was written at. An entry which has since been
+        // replaced or moved no longer matches its position, and is skipped.
+        private int[] order = new int[16];
+        private long[] orderPositions = new long[16];
+        private int orderHead = 0;
+        private int orderSize = 0;
+
+        private long head = 0;
+        private long tail = 0;
+
+        Arena(int size) {
+            this.size = size;
+            this.buffer = ByteBuffer.allocateDirect(size);
+        }
+
+        synchronized long used() {
+            return head - tail;
+        }
+
+        synchronized byte[] get(int local) {
+            if (local >= positions.length || positions[local] == ABSENT) {
+                return null;
+            }
+            referenced[local] = true;
+            return read(local);
+        }
+
+        private byte[] read(int local) {
+            byte[] data = new byte[lengths[local]];
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) (positions[local] % size));
+            view.get(data);
+            return data;
+        }
+
+        synchronized boolean put(int local, byte[] data) {
+            if (data.length > size) {
+                return false;
+            }
+            ensureCapacity(local);
+            // Any previous copy no longer matches its entry in the ring, so ages out
+            positions[local] = ABSENT;
+
+            long position = reserve(data.length);
+            write(position, data);
+            positions[local] = position;
+            lengths[local] = data.length;
+            referenced[local] = false;
+            push(local, position);
+            return true;
+        }
+
+        /**
+         * Make room for {@code length} bytes at the head, evicting or moving
+         * entries from the tail as needed.
+         *
+         * @return the position for the new entry
+         */
+        private long reserve(int length) {
+            while (true) {
+                long position = align(head, length);
+                if (position + length - tail <= size) {
+                    head = position + length;
+                    return position;
+                }
+                reclaimOldest();
+            }
+        }
+
+        private long align(long position, int length) {
+            long offset = position % size;
+            return offset + length > size ? position + (size - offset) : position;
+        }
+
+        private void reclaimOldest() {
+            if (orderSize == 0) {
+                // Nothing left but padding; start again at the beginning of the buffer
+                head = (head + size - 1) / size * size;
+                tail = head;
+                return;
+            }
+
+            long position = orderPositions[orderHead];
+            int local = pop();
+            if (positions[local] != position) {
+                // Replaced or moved since it was written; nothing to reclaim
+                advanceTail();
+                return;
+            }
+
+            if (referenced[local]) {
+                // Second chance: copy to the head, if it fits without evicting anything else
+                int length = lengths[local];
+                long target = align(head, length);
+                long newTail = nextTail();
+                if (target + length - newTail <= size) {
+                    byte[] data = read(local);
+                    tail = newTail;
+                    head = target + length;
+                    write(target, data);
+                    positions[local] = target;
+                    referenced[local] = false;
+                    push(local, target);
+                    return;
+                }
+            }
+
+            positions[local] = ABSENT;
+            evictions.incrementAndGet();
+            advanceTail();
+        }
+
+        private long nextTail() {
+            for (int i = 0; i < orderSize; i++) {
+                int index = (orderHead + i) % order.length;
+                if (positions[order[index]] == orderPositions[index]) {
+                    return orderPositions[index];
+                }
+            }
+            return head;
+        }
+
+        private void advanceTail() {
+            tail = nextTail();
+        }
+
+        private void write(long position, byte[] data) {
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) (position % size));
+            view.put(data);
+        }
+
+        private void ensureCapacity(int local) {
+            if (local < positions.length) {
+                return;
+            }
+            int newLength = Math.max(local + 1, positions.length * 2);
+            int oldLength = positions.length;
+            positions = Arrays.copyOf(positions, newLength);
+            Arrays.fill(positions, oldLength, newLength, ABSENT);
+            lengths = Arrays.copyOf(lengths, newLength);
+            referenced = Arrays.copyOf(referenced, newLength);
+        }
+
+        private void push(int local, long position) {
+            if (orderSize == order.length) {
+                int[] grown = new int[order.length * 2];
+                long[] grownPositions = new long[order.length * 2];
+                for (int i = 0; i < orderSize; i++) {
+                    grown[i] = order[(orderHead + i) % order.length];
+                    grownPositions[i] = orderPositions[(orderHead + i) % order.length];
+                }
+                order = grown;
+                orderPositions = grownPositions;
+                orderHead = 0;
+            }
+            int index = (orderHead + orderSize) % order.length;
+            order[index] = local;
+            orderPositions[index] = position;
+            orderSize++;
+        }
+
+        private int pop() {
+            int local = order[orderHead];
+            orderHead = (orderHead + 1) % order.length;
+            orderSize--;
+            return local;
+        }
+    }
+}
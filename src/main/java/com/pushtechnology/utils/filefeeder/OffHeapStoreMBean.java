@@ -0,0 +1,16 @@
+package com.pushtechnology.utils.filefeeder;
+
+/**
+ * JMX view of {@link OffHeapStore}, for sizing the cache.
+ */
+public interface OffHeapStoreMBean {
+    long getCapacity();
+
+    long getUsed();
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+}
@@ -0,0 +1,163 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Schedules updates at a target rate.
+ *
+ * Each call to {@link #awaitNext()} is given the next send time on a fixed
+ * schedule and waits until then. The schedule does not slip when the caller
+ * falls behind, so a stalled publisher catches up afterwards rather than
+ * silently running slower. The intended send time is returned so latency can
+ * be measured from when an update should have been sent, not when it
+ * actually was, which avoids coordinated omission hiding server stalls.
+ *
+ * The rate may also change linearly over a period, to ramp load up or down.
+ */
+class Pacer {
+
+    enum Profile {
+        /** Evenly spaced updates. */
+        CONSTANT,
+        /** Exponentially distributed gaps, i.e. a Poisson arrival process. */
+        POISSON,
+        /** Groups of updates sent together, with the gap between groups keeping the average rate. */
+        BURST
+    }
+
+    // Below this, spin rather than park; parking is rarely accurate to better than ~50us
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final double rate;
+    private final double intervalNanos;
+    // For a ramp: the rate at the end, and how long the ramp lasts
+    private final double endRate;
+    private final long rampNanos;
+    private final Profile profile;
+    private final int burstSize;
+    private final Random random = new Random();
+
+    private boolean started = false;
+    private long start;
+    private double offset = 0;
+    private long count = 0;
+
+    /**
+     * @param rate      average updates per second
+     * @param profile   distribution of send times
+     * @param burstSize number of updates per group, for {@link Profile#BURST}
+     * @throws IllegalArgumentException if the rate is not greater than zero
+     */
+    Pacer(double rate, Profile profile, int burstSize) {
+        this(rate, rate, 0, profile, burstSize);
+    }
+
+    /**
+     * @param rate      updates per second at the start
+     * @param endRate   updates per second after {@code rampNanos}, and from
+     *                  then on
+     * @param rampNanos how long the rate takes to change
+     * @throws IllegalArgumentException if either rate is negative or not
+     * finite, or the rate doesn't change and is not greater than zero
+     */
+    Pacer(double rate, double endRate, long rampNanos, Profile profile, int burstSize) {
+        if (!isValidRate(rate) || !isValidRate(endRate)
+                || ((rampNanos <= 0 || rate == endRate) && rate == 0)) {
+            throw new IllegalArgumentException("Rate must be greater than zero: " + rate
+                    + (rate == endRate ? "" : " to " + endRate));
+        }
+        this.rate = rate;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.endRate = endRate;
+        this.rampNanos = rampNanos;
+        this.profile = profile;
+        this.burstSize = Math.max(1, burstSize);
+    }
+
+    private static boolean isValidRate(double rate) {
+        return rate >= 0 && !Double.isInfinite(rate);
+    }
+
+    /**
+     * @return the interval between updates {@code offset} nanoseconds into
+     * the schedule
+     */
+    private double intervalAt(double offset) {
+        if (rampNanos <= 0 || rate == endRate) {
+            return intervalNanos;
+        }
+        double current = offset >= rampNanos ? endRate : rate + (endRate - rate) * offset / rampNanos;
+        // A ramp from zero has to start somewhere
+        return TimeUnit.SECONDS.toNanos(1) / Math.max(current, 1);
+    }
+
+    /**
+     * Reserve the next slot in the schedule.
+     *
+     * @return the intended send time, on the System.nanoTime() clock
+     */
+    synchronized long next() {
+        if (!started) {
+            start = System.nanoTime();
+            started = true;
+        }
+
+        long intended = start + (long) offset;
+        count++;
+        final double intervalNanos = intervalAt(offset);
+
+        switch (profile) {
+            case POISSON:
+                offset += -Math.log(1 - random.nextDouble()) * intervalNanos;
+                break;
+            case BURST:
+                if (count % burstSize == 0) {
+                    offset += intervalNanos * burstSize;
+                }
+                break;
+            case CONSTANT:
+            default:
+                offset += intervalNanos;
+                break;
+        }
+
+        return intended;
+    }
+
+    /**
+     * Wait until the next slot in the schedule.
+     *
+     * @return the intended send time, on the System.nanoTime() clock
+     */
+    long awaitNext() {
+        long intended = next();
+        sleepUntil(intended);
+        return intended;
+    }
+
+    @Override
+    public String toString() {
+        return rate + (rampNanos > 0 && rate != endRate ? "-" + endRate : "") + "/sec " + profile + (profile == Profile.BURST ? " (" + burstSize + " per burst)" : "");
+    }
+
+    /**
+     * Wait until {@code deadline} on the System.nanoTime() clock, parking
+     * for most of the time and spinning for the last few microseconds.
+     */
+    static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            }
+            else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
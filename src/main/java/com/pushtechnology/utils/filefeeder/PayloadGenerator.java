@@ -0,0 +1,501 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates values from a template, each differing from the one before by a
+ * few small changes, as consecutive values from a real feed do.
+ *
+ * A JSON template is scanned once for its numbers, strings and booleans.
+ * For each value, some of them change: a number takes a step of a random
+ * walk, keeping its number of decimal places; a letter or digit in a string
+ * is replaced by another of the same kind; a boolean is flipped. Object keys,
+ * strings containing escapes, and numbers with exponents are left alone.
+ * Any other template is treated as binary, and its letters and digits are
+ * changed in the same way as a string's.
+ *
+ * Values are rendered into a buffer which is reused, so the only allocation
+ * for each value is the copy returned. A generator is used by one topic, and
+ * is not expected to be contended.
+ */
+final class PayloadGenerator {
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private static final byte[] DIGITS = "0123456789".getBytes();
+    private static final byte[] LOWER = "abcdefghijklmnopqrstuvwxyz".getBytes();
+    private static final byte[] UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".getBytes();
+
+    private final SplittableRandom random;
+    private final int mutations;
+
+    // For JSON: the template, with the fields which change in order of position
+    private final byte[] template;
+    private final Field[] fields;
+
+    // For binary: the current value, and the positions which may change
+    private final byte[] binary;
+    private final int[] positions;
+
+    // For JSON: the value being rendered
+    private byte[] buffer;
+    private int length;
+
+    /**
+     * @param mutations   how many fields (or for a binary template, bytes)
+     *                    to change in each value
+     * @param payloadSize if greater than the template's size, pad a JSON
+     *                    object to about this size; a binary template is
+     *                    repeated or truncated to exactly this size
+     */
+    PayloadGenerator(byte[] template, int mutations, int payloadSize, long seed) {
+        this.random = new SplittableRandom(seed);
+        this.mutations = Math.max(1, mutations);
+
+        if (isJson(template)) {
+            List<Field> found = new ArrayList<>();
+            scan(template, found);
+            this.fields = found.toArray(new Field[0]);
+            this.template = pad(template, payloadSize);
+            this.binary = null;
+            this.positions = null;
+            this.buffer = new byte[this.template.length + 64];
+        }
+        else {
+            this.template = null;
+            this.fields = null;
+            this.binary = resize(template, payloadSize);
+            this.positions = mutablePositions(binary);
+        }
+    }
+
+    /**
+     * @return true if the template has been scanned as JSON
+     */
+    boolean isJson() {
+        return fields != null;
+    }
+
+    /**
+     * @return the number of places in a value which can change
+     */
+    int getFieldCount() {
+        return fields != null ? fields.length : positions.length;
+    }
+
+    /**
+     * @return the next value
+     */
+    synchronized byte[] next() {
+        if (fields == null) {
+            for (int i = 0; i < mutations && positions.length > 0; i++) {
+                int position = positions[random.nextInt(positions.length)];
+                binary[position] = replacement(binary[position]);
+            }
+            return binary.clone();
+        }
+
+        for (int i = 0; i < mutations && fields.length > 0; i++) {
+            fields[random.nextInt(fields.length)].mutate(random);
+        }
+        render();
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void render() {
+        int from = 0;
+        length = 0;
+        for (Field field : fields) {
+            append(template, from, field.start - from);
+            field.render(this);
+            from = field.end;
+        }
+        append(template, from, template.length - from);
+    }
+
+    private void append(byte[] bytes, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(bytes, offset, buffer, length, count);
+        length += count;
+    }
+
+    private void ensureCapacity(int count) {
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+    }
+
+    private static boolean isJson(byte[] template) {
+        for (byte b : template) {
+            if (b == '{' || b == '[') {
+                return true;
+            }
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the numbers, strings and booleans which can change.
+     */
+    private static void scan(byte[] json, List<Field> fields) {
+        int i = 0;
+        while (i < json.length) {
+            byte b = json[i];
+            if (b == '"') {
+                int end = endOfString(json, i);
+                if (!isKey(json, end)) {
+                    StringField field = StringField.of(json, i, end);
+                    if (field != null) {
+                        fields.add(field);
+                    }
+                }
+                i = end;
+            }
+            else if (b == '-' || (b >= '0' && b <= '9')) {
+                int end = i + 1;
+                while (end < json.length && isNumberByte(json[end])) {
+                    end++;
+                }
+                NumberField field = NumberField.of(json, i, end);
+                if (field != null) {
+                    fields.add(field);
+                }
+                i = end;
+            }
+            else if (startsWith(json, i, TRUE) || startsWith(json, i, FALSE)) {
+                boolean value = json[i] == 't';
+                int end = i + (value ? TRUE.length : FALSE.length);
+                fields.add(new BooleanField(i, end, value));
+                i = end;
+            }
+            else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return the index after the closing quote of the string starting at
+     * {@code start}
+     */
+    private static int endOfString(byte[] json, int start) {
+        int i = start + 1;
+        while (i < json.length) {
+            if (json[i] == '\\') {
+                i += 2;
+            }
+            else if (json[i] == '"') {
+                return i + 1;
+            }
+            else {
+                i++;
+            }
+        }
+        return json.length;
+    }
+
+    private static boolean isKey(byte[] json, int end) {
+        for (int i = end; i < json.length; i++) {
+            byte b = json[i];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b == ':';
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNumberByte(byte b) {
+        return (b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-';
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+        if (offset + prefix.length > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a padding string to the end of a JSON object to bring it up to
+     * about {@code size} bytes. The padding doesn't change between values.
+     * Any other document, such as an array, is left as it is: the fields
+     * have already been found, so the padding must follow all of them.
+     */
+    private byte[] pad(byte[] json, int size) {
+        int first = 0;
+        while (first < json.length && isWhitespace(json[first])) {
+            first++;
+        }
+        int close = json.length - 1;
+        while (close >= 0 && isWhitespace(json[close])) {
+            close--;
+        }
+        final byte[] key = ",\"padding\":\"".getBytes();
+        if (close <= first || json[first] != '{' || json[close] != '}' || json.length + key.length + 1 >= size) {
+            return json;
+        }
+
+        int open = close - 1;
+        while (open >= 0 && isWhitespace(json[open])) {
+            open--;
+        }
+        // No leading comma for an empty object
+        final int keyOffset = open >= 0 && json[open] == '{' ? 1 : 0;
+
+        int padding = size - json.length - (key.length - keyOffset) - 1;
+        byte[] padded = new byte[size];
+        System.arraycopy(json, 0, padded, 0, close);
+        int i = close;
+        System.arraycopy(key, keyOffset, padded, i, key.length - keyOffset);
+        i += key.length - keyOffset;
+        for (int j = 0; j < padding; j++) {
+            padded[i++] = LOWER[random.nextInt(LOWER.length)];
+        }
+        padded[i++] = '"';
+        System.arraycopy(json, close, padded, i, json.length - close);
+        return padded;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static byte[] resize(byte[] bytes, int size) {
+        if (size <= 0 || size == bytes.length || bytes.length == 0) {
+            return bytes.clone();
+        }
+        byte[] resized = new byte[size];
+        for (int i = 0; i < size; i += bytes.length) {
+            System.arraycopy(bytes, 0, resized, i, Math.min(bytes.length, size - i));
+        }
+        return resized;
+    }
+
+    /**
+     * @return the positions of letters and digits, or if there are none, of
+     * every byte
+     */
+    private static int[] mutablePositions(byte[] bytes) {
+        int[] positions = new int[bytes.length];
+        int count = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (isAlphanumeric(bytes[i])) {
+                positions[count++] = i;
+            }
+        }
+        if (count == 0) {
+            for (int i = 0; i < bytes.length; i++) {
+                positions[i] = i;
+            }
+            return positions;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    private static boolean isAlphanumeric(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    /**
+     * @return a random letter or digit of the same kind as {@code b}, or a
+     * random byte if it is neither
+     */
+    private byte replacement(byte b) {
+        if (b >= '0' && b <= '9') {
+            return DIGITS[random.nextInt(DIGITS.length)];
+        }
+        if (b >= 'a' && b <= 'z') {
+            return LOWER[random.nextInt(LOWER.length)];
+        }
+        if (b >= 'A' && b <= 'Z') {
+            return UPPER[random.nextInt(UPPER.length)];
+        }
+        return (byte) random.nextInt(256);
+    }
+
+    @Override
+    public String toString() {
+        return (fields != null ? "JSON template with " + fields.length + " fields" : "binary template of " + binary.length + " bytes");
+    }
+
+    /**
+     * A part of the template which changes, between {@code start} and
+     * {@code end}.
+     */
+    private abstract static class Field {
+        final int start;
+        final int end;
+
+        Field(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        abstract void mutate(SplittableRandom random);
+
+        abstract void render(PayloadGenerator generator);
+    }
+
+    /**
+     * A number, held as an unscaled long and the number of decimal places.
+     */
+    private static final class NumberField extends Field {
+        private final int scale;
+        // Standard deviation of each step: 1% of the template's value
+        private final long step;
+        private long unscaled;
+
+        private NumberField(int start, int end, long unscaled, int scale) {
+            super(start, end);
+            this.unscaled = unscaled;
+            this.scale = scale;
+            this.step = Math.max(1, Math.abs(unscaled) / 100);
+        }
+
+        /**
+         * @return the field, or null if the number can't be walked
+         */
+        static NumberField of(byte[] json, int start, int end) {
+            boolean negative = json[start] == '-';
+            int i = negative ? start + 1 : start;
+            long unscaled = 0;
+            int scale = -1;
+            int digits = 0;
+            for (; i < end; i++) {
+                byte b = json[i];
+                if (b == '.' && scale < 0) {
+                    scale = 0;
+                }
+                else if (b >= '0' && b <= '9' && digits < 18) {
+                    unscaled = unscaled * 10 + (b - '0');
+                    digits++;
+                    if (scale >= 0) {
+                        scale++;
+                    }
+                }
+                else {
+                    // An exponent, or too many digits
+                    return null;
+                }
+            }
+            if (digits == 0) {
+                return null;
+            }
+            return new NumberField(start, end, negative ? -unscaled : unscaled, Math.max(0, scale));
+        }
+
+        @Override
+        void mutate(SplittableRandom random) {
+            long delta = (long) (random.nextGaussian() * step);
+            unscaled += delta != 0 ? delta : (random.nextBoolean() ? 1 : -1);
+        }
+
+        @Override
+        void render(PayloadGenerator generator) {
+            generator.ensureCapacity(21);
+            byte[] buffer = generator.buffer;
+            int length = generator.length;
+
+            long value = unscaled;
+            if (value < 0) {
+                buffer[length++] = '-';
+                value = -value;
+            }
+
+            // Write the digits backwards into place, with the decimal point
+            int count = 1;
+            for (long v = value / 10; v != 0; v /= 10) {
+                count++;
+            }
+            count = Math.max(count, scale + 1);
+            int width = count + (scale > 0 ? 1 : 0);
+            int i = length + width - 1;
+            for (int digit = 0; digit < count; digit++) {
+                if (scale > 0 && digit == scale) {
+                    buffer[i--] = '.';
+                }
+                buffer[i--] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            generator.length = length + width;
+        }
+    }
+
+    /**
+     * A string's content, changed a letter or digit at a time.
+     */
+    private static final class StringField extends Field {
+        private final byte[] value;
+        private final int[] positions;
+
+        private StringField(int start, int end, byte[] value, int[] positions) {
+            super(start, end);
+            this.value = value;
+            this.positions = positions;
+        }
+
+        /**
+         * @return the field, or null if the string has nothing to change or
+         * contains escapes
+         */
+        static StringField of(byte[] json, int start, int end) {
+            byte[] value = Arrays.copyOfRange(json, start, end);
+            int[] positions = new int[value.length];
+            int count = 0;
+            for (int i = 0; i < value.length; i++) {
+                if (value[i] == '\\') {
+                    return null;
+                }
+                if (isAlphanumeric(value[i])) {
+                    positions[count++] = i;
+                }
+            }
+            return count == 0 ? null : new StringField(start, end, value, Arrays.copyOf(positions, count));
+        }
+
+        @Override
+        void mutate(SplittableRandom random) {
+            int position = positions[random.nextInt(positions.length)];
+            byte b = value[position];
+            byte[] kind = b >= '0' && b <= '9' ? DIGITS : b >= 'a' && b <= 'z' ? LOWER : UPPER;
+            value[position] = kind[random.nextInt(kind.length)];
+        }
+
+        @Override
+        void render(PayloadGenerator generator) {
+            generator.append(value, 0, value.length);
+        }
+    }
+
+    private static final class BooleanField extends Field {
+        private boolean value;
+
+        BooleanField(int start, int end, boolean value) {
+            super(start, end);
+            this.value = value;
+        }
+
+        @Override
+        void mutate(SplittableRandom random) {
+            value = !value;
+        }
+
+        @Override
+        void render(PayloadGenerator generator) {
+            byte[] literal = value ? TRUE : FALSE;
+            generator.append(literal, 0, literal.length);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One of a number of feeder processes sharing a file tree, which publishes
+ * only the topics it owns.
+ *
+ * Topics are shared out with a {@link ConsistentHash} of their names, which
+ * is the same in every process and on every host, so the processes own
+ * disjoint sets of topics which together cover the tree. Changing the
+ * number of processes moves only a share of the topics to new owners.
+ */
+class ProcessShard {
+
+    private final int index;
+    private final int count;
+    private final ConsistentHash<Integer> ring;
+
+    /**
+     * @param index this process's shard, from zero
+     * @param count the number of shards
+     */
+    ProcessShard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+
+        List<Integer> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(i);
+        }
+        this.ring = new ConsistentHash<>(shards);
+    }
+
+    /**
+     * @param spec "index/count", e.g. "0/4"
+     */
+    static ProcessShard parse(String spec) {
+        int slash = spec.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Shard must be index/count, e.g. 0/4: " + spec);
+        }
+        try {
+            return new ProcessShard(Integer.parseInt(spec.substring(0, slash).trim()),
+                                    Integer.parseInt(spec.substring(slash + 1).trim()));
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Shard must be index/count, e.g. 0/4: " + spec);
+        }
+    }
+
+    /**
+     * @return true if this process publishes to the topic for a file
+     */
+    boolean owns(String topicName) {
+        return count == 1 || ring.get(topicName) == index;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
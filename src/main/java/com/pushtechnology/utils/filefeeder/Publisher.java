@@ -0,0 +1,42 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Destination for topics and updates.
+ *
+ * The Diffusion implementation sends everything to a server; the others
+ * stay in-process, so the cost of the feeder itself can be measured and
+ * tested without one.
+ */
+interface Publisher {
+
+    /**
+     * Connect, blocking until the publisher is ready.
+     */
+    void connect();
+
+    /**
+     * Create a topic.
+     *
+     * @return a future which completes with true if the topic was created,
+     * or false if it already existed
+     */
+    CompletableFuture<Boolean> addTopic(String topic);
+
+    /**
+     * Prepare to send values to a topic through an update stream, if the
+     * publisher supports them. Subsequent calls to {@link #set} for the topic
+     * use the stream.
+     */
+    void createUpdateStream(String topic) throws Exception;
+
+    /**
+     * Send a value to a topic.
+     *
+     * @return a future which completes when the update is acknowledged
+     */
+    CompletableFuture<?> set(String topic, Object value);
+
+    void close();
+}
@@ -0,0 +1,50 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.Arrays;
+
+/**
+ * Records held on the heap, for input which can't be memory-mapped, such as
+ * the content of a compressed file.
+ */
+class RecordList implements Records {
+
+    private byte[][] records = new byte[64][];
+    // offsets[i] is the start of record i; offsets[count] is the end of the last record
+    private long[] offsets = new long[65];
+    private int count;
+
+    /**
+     * Append a record, which must follow the previous one.
+     *
+     * @param end the offset after the record, including its line terminator
+     */
+    void add(byte[] record, long start, long end) {
+        if (count == records.length) {
+            records = Arrays.copyOf(records, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2 + 1);
+        }
+        records[count] = record;
+        offsets[count] = start;
+        offsets[++count] = end;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public byte[] get(int idx) {
+        return records[idx];
+    }
+
+    @Override
+    public long offset(int idx) {
+        return offsets[idx];
+    }
+
+    @Override
+    public long length() {
+        return offsets[count];
+    }
+}
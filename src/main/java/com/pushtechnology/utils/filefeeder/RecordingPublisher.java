@@ -0,0 +1,137 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps every topic, and the most recent add topic requests and updates, in
+ * memory, acknowledging them immediately. Intended for tests, and for
+ * checking what a run would publish. Only a bounded number of requests and
+ * updates are kept, so that a long run with --repeat, or the provisioning of
+ * a large tree, doesn't exhaust the heap; the rest are only counted.
+ */
+class RecordingPublisher implements Publisher {
+
+    private static final Log LOG = Log.get("publisher");
+
+    // Updates kept when selected from the command line
+    static final int DEFAULT_CAPACITY = 1000;
+
+    /**
+     * A single update, as received.
+     */
+    static final class Update {
+        final String topic;
+        final Object value;
+
+        Update(String topic, Object value) {
+            this.topic = topic;
+            this.value = value;
+        }
+    }
+
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private final int capacity;
+    // The most recent addTopic() calls, oldest first; guarded by itself
+    private final ArrayDeque<String> addTopicRequests = new ArrayDeque<>();
+    private final LongAdder addTopicCount = new LongAdder();
+    // The most recent updates, oldest first; guarded by itself
+    private final ArrayDeque<Update> updates = new ArrayDeque<>();
+    private final LongAdder updateCount = new LongAdder();
+
+    RecordingPublisher() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of the most recent add topic requests,
+     *                 and of the most recent updates, to keep
+     */
+    RecordingPublisher(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addTopic(String topic) {
+        addTopicCount.increment();
+        keep(addTopicRequests, topic);
+        return CompletableFuture.completedFuture(topics.add(topic));
+    }
+
+    @Override
+    public void createUpdateStream(String topic) {
+    }
+
+    @Override
+    public CompletableFuture<?> set(String topic, Object value) {
+        updateCount.increment();
+        keep(updates, new Update(topic, value));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Add to the end of {@code recent}, dropping the oldest entry once it
+     * holds {@code capacity}.
+     */
+    private <T> void keep(ArrayDeque<T> recent, T entry) {
+        if (capacity > 0) {
+            synchronized (recent) {
+                if (recent.size() == capacity) {
+                    recent.removeFirst();
+                }
+                recent.addLast(entry);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        LOG.info("Recorded " + topics.size() + " topics and " + getUpdateCount() + " updates");
+    }
+
+    Set<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * @return the most recent addTopic() calls, oldest first, including
+     * those for existing topics
+     */
+    List<String> getAddTopicRequests() {
+        synchronized (addTopicRequests) {
+            return new ArrayList<>(addTopicRequests);
+        }
+    }
+
+    /**
+     * @return the number of addTopic() calls, including those no longer kept
+     */
+    long getAddTopicCount() {
+        return addTopicCount.sum();
+    }
+
+    /**
+     * @return the most recent updates, oldest first
+     */
+    List<Update> getUpdates() {
+        synchronized (updates) {
+            return new ArrayList<>(updates);
+        }
+    }
+
+    /**
+     * @return the number of updates received, including those no longer kept
+     */
+    long getUpdateCount() {
+        return updateCount.sum();
+    }
+}
@@ -0,0 +1,29 @@
+package com.pushtechnology.utils.filefeeder;
+
+/**
+ * An indexed sequence of records from a file.
+ */
+interface Records {
+
+    /**
+     * @return the number of records
+     */
+    int size();
+
+    /**
+     * @return the content of record {@code idx}, without the line terminator
+     */
+    byte[] get(int idx);
+
+    /**
+     * @return the offset of the start of record {@code idx} in the
+     * (uncompressed) file; an index equal to {@link #size()} gives the end of
+     * the last record
+     */
+    long offset(int idx);
+
+    /**
+     * @return the number of bytes the records were read from
+     */
+    long length();
+}
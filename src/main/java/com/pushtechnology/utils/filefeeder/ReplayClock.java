@@ -0,0 +1,231 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules records by the event timestamps they contain, so that a capture
+ * is replayed with its original gaps between records, optionally sped up or
+ * slowed down.
+ *
+ * The timestamp is either a prefix of the record, followed by a space, tab,
+ * comma or '|' which is removed along with it, or the value of a named JSON
+ * field, which is left in place. It may be a number, in {@code unit} since
+ * the epoch, or an ISO-8601 instant.
+ *
+ * The first timestamp seen is replayed immediately, and each later record
+ * at the same distance from it in event time, divided by the speed. How
+ * late records are actually sent is recorded, to show whether the feeder is
+ * keeping up.
+ */
+class ReplayClock {
+
+    private static final Log LOG = Log.get("replay");
+
+    static final String PREFIX = "prefix";
+
+    // Returned when a record has no timestamp
+    static final long NONE = Long.MIN_VALUE;
+
+    private final byte[] field;
+    private final long unitNanos;
+    private final double speed;
+
+    private final LatencyHistogram lag = new LatencyHistogram();
+
+    private boolean anchored = false;
+    private long firstTimestamp;
+    private long firstDue;
+    private volatile long latestTimestamp = NONE;
+    private volatile boolean warned = false;
+
+    /**
+     * @param source {@link #PREFIX}, or the name of a JSON field
+     * @param unit   the unit of numeric timestamps
+     * @param speed  replay speed relative to the original; infinite to send
+     *               every record as soon as possible, in order
+     * @throws IllegalArgumentException if the speed is not greater than zero
+     */
+    ReplayClock(String source, TimeUnit unit, double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be greater than zero, or MAX: " + speed);
+        }
+        this.field = PREFIX.equalsIgnoreCase(source) ? null : ("\"" + source + "\"").getBytes(StandardCharsets.UTF_8);
+        this.unitNanos = unit.toNanos(1);
+        this.speed = speed;
+    }
+
+    /**
+     * @return the length of the timestamp prefix, including its separator,
+     * or zero if timestamps are not prefixes
+     */
+    private int prefixLength(byte[] record) {
+        if (field != null) {
+            return 0;
+        }
+        int end = endOfPrefix(record);
+        return end < record.length ? end + 1 : end;
+    }
+
+    /**
+     * @param timestamp the record's timestamp, from {@link #timestamp}
+     * @return the record without its timestamp prefix; a record without a
+     * timestamp is returned unchanged, as its first token is part of the data
+     */
+    byte[] strip(byte[] record, long timestamp) {
+        int length = timestamp == NONE ? 0 : prefixLength(record);
+        return length == 0 ? record : Arrays.copyOfRange(record, length, record.length);
+    }
+
+    private static int endOfPrefix(byte[] record) {
+        int i = 0;
+        while (i < record.length) {
+            byte b = record[i];
+            if (b == ' ' || b == '\t' || b == ',' || b == '|') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the record's timestamp in nanoseconds since the epoch, or
+     * {@link #NONE} if it doesn't have one
+     */
+    long timestamp(byte[] record) {
+        int start;
+        int end;
+
+        if (field == null) {
+            start = 0;
+            end = endOfPrefix(record);
+        }
+        else {
+            start = indexOf(record, field);
+            if (start < 0) {
+                return none();
+            }
+            start += field.length;
+            while (start < record.length && (record[start] == ' ' || record[start] == ':' || record[start] == '\t')) {
+                start++;
+            }
+            end = start;
+            if (end < record.length && record[end] == '"') {
+                start++;
+                end = start;
+                while (end < record.length && record[end] != '"') {
+                    end++;
+                }
+            }
+            else {
+                while (end < record.length && record[end] != ',' && record[end] != '}' && record[end] != ' ') {
+                    end++;
+                }
+            }
+        }
+
+        if (end == start) {
+            return none();
+        }
+        String text = new String(record, start, end - start, StandardCharsets.UTF_8);
+        try {
+            if (Character.isDigit(text.charAt(text.length() - 1)) && text.indexOf('T') < 0) {
+                return text.indexOf('.') < 0
+                        ? Long.parseLong(text) * unitNanos
+                        : (long) (Double.parseDouble(text) * unitNanos);
+            }
+            Instant instant = Instant.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(text));
+            return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+        }
+        catch (NumberFormatException | DateTimeParseException ex) {
+            return none();
+        }
+    }
+
+    private long none() {
+        if (!warned) {
+            warned = true;
+            LOG.warn("Record without a timestamp; records without timestamps are sent immediately");
+        }
+        return NONE;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Replay from the start again: the next timestamp seen is sent
+     * immediately.
+     */
+    synchronized void restart() {
+        anchored = false;
+    }
+
+    /**
+     * @return when a record with {@code timestamp} should be sent, on the
+     * System.nanoTime() clock, or zero to send it immediately
+     */
+    long due(long timestamp) {
+        if (timestamp == NONE) {
+            return 0;
+        }
+        latestTimestamp = timestamp;
+        if (Double.isInfinite(speed)) {
+            return 0;
+        }
+
+        long due;
+        synchronized (this) {
+            if (!anchored) {
+                anchored = true;
+                firstTimestamp = timestamp;
+                firstDue = System.nanoTime();
+            }
+            due = firstDue + (long) ((timestamp - firstTimestamp) / speed);
+        }
+        // Zero means unscheduled
+        return due == 0 ? 1 : due;
+    }
+
+    /**
+     * Wait until {@code due}, and record how late the record is.
+     */
+    void await(long due) {
+        Pacer.sleepUntil(due);
+        lag.record(Math.max(0, System.nanoTime() - due));
+    }
+
+    /**
+     * @return the event time reached and how late records have been sent
+     * since the last report
+     */
+    String report() {
+        LatencyHistogram.Snapshot snapshot = lag.snapshotAndReset();
+        long latest = latestTimestamp;
+        return "replay" + (latest == NONE ? "" : " at " + Instant.ofEpochSecond(0, latest))
+                + " lag(us) p50=" + TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(50))
+                + " p99=" + TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(99))
+                + " max=" + TimeUnit.NANOSECONDS.toMicros(snapshot.getMax());
+    }
+
+    @Override
+    public String toString() {
+        return (field == null ? PREFIX : new String(field, StandardCharsets.UTF_8)) + " at "
+                + (Double.isInfinite(speed) ? "max" : speed + "x") + " speed";
+    }
+}
@@ -0,0 +1,199 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A load test as a sequence of phases, such as warm-up, ramp, steady state,
+ * spike and drain, read from a JSON file:
+ *
+ * <pre>
+ * {"phases": [
+ *   {"name": "warm-up", "duration": "30s", "rate": 1000},
+ *   {"name": "ramp", "duration": "1m", "rate": 1000, "torate": 20000},
+ *   {"name": "steady", "duration": "5m", "rate": 20000, "inflight": 500},
+ *   {"name": "spike", "duration": "10s", "rate": 100000, "topics": ["prices/**"]},
+ *   {"name": "drain", "duration": "30s", "rate": 0}
+ * ]}
+ * </pre>
+ *
+ * Durations take the same units as --schedule intervals. Each phase may set
+ * a target rate (or ramp from {@code rate} to {@code torate}), the rate
+ * profile, a limit on updates in flight, and topic patterns limiting which
+ * topics are updated; anything not set is unlimited. A rate of zero sends
+ * nothing, leaving outstanding updates to be acknowledged.
+ */
+final class Scenario {
+
+    /**
+     * One phase of a scenario.
+     */
+    static final class Phase {
+        final String name;
+        final long durationNanos;
+        // Updates per second, or NaN if the phase is not paced
+        final double rate;
+        final double toRate;
+        final Pacer.Profile profile;
+        final int burstSize;
+        // Limit on updates in flight across all sessions, or 0 for no limit
+        final int inFlight;
+        private final List<String> topics;
+        private final List<Pattern> patterns = new ArrayList<>();
+
+        Phase(String name, long durationNanos, double rate, double toRate, Pacer.Profile profile, int burstSize,
+              int inFlight, List<String> topics) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.rate = rate;
+            this.toRate = toRate;
+            this.profile = profile;
+            this.burstSize = burstSize;
+            this.inFlight = inFlight;
+            this.topics = topics;
+            for (String topic : topics) {
+                patterns.add(UpdateSchedule.glob(topic));
+            }
+        }
+
+        /**
+         * @return true if the phase updates {@code topic}
+         */
+        boolean includes(String topic) {
+            if (patterns.isEmpty()) {
+                return true;
+            }
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(topic).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if no updates are sent in this phase
+         */
+        boolean isIdle() {
+            return rate == 0 && toRate == 0;
+        }
+
+        /**
+         * @return the pacer for the phase, or null if it is not paced
+         */
+        Pacer createPacer() {
+            if (Double.isNaN(rate) || isIdle()) {
+                return null;
+            }
+            return rate == toRate
+                    ? new Pacer(rate, profile, burstSize)
+                    : new Pacer(rate, toRate, durationNanos, profile, burstSize);
+        }
+
+        @Override
+        public String toString() {
+            return name + " for " + TimeUnit.NANOSECONDS.toMillis(durationNanos) / 1000.0 + "s"
+                    + (Double.isNaN(rate) ? "" : isIdle() ? ", idle" : ", " + rate + (rate == toRate ? "" : "-" + toRate) + "/sec " + profile)
+                    + (inFlight > 0 ? ", in flight " + inFlight : "")
+                    + (topics.isEmpty() ? "" : ", topics " + String.join(" ", topics));
+        }
+    }
+
+    private final List<Phase> phases;
+
+    Scenario(List<Phase> phases) {
+        this.phases = Collections.unmodifiableList(phases);
+    }
+
+    List<Phase> getPhases() {
+        return phases;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the scenario is invalid
+     */
+    static Scenario read(Path file) throws IOException {
+        return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    static Scenario parse(String json) {
+        Object root = JsonReader.parse(json);
+        Object phases = root instanceof Map ? ((Map<?, ?>) root).get("phases") : root;
+        if (!(phases instanceof List) || ((List<?>) phases).isEmpty()) {
+            throw new IllegalArgumentException("Scenario must have a list of phases");
+        }
+
+        List<Phase> result = new ArrayList<>();
+        for (Object phase : (List<?>) phases) {
+            if (!(phase instanceof Map)) {
+                throw new IllegalArgumentException("Scenario phase must be an object: " + phase);
+            }
+            result.add(parsePhase((Map<?, ?>) phase, result.size() + 1));
+        }
+        return new Scenario(result);
+    }
+
+    private static Phase parsePhase(Map<?, ?> phase, int number) {
+        String name = phase.containsKey("name") ? String.valueOf(phase.get("name")) : "phase " + number;
+
+        Object duration = phase.get("duration");
+        if (duration == null) {
+            throw new IllegalArgumentException("Scenario phase " + name + " has no duration");
+        }
+        long durationNanos = UpdateSchedule.parseInterval(duration instanceof Double
+                ? duration + "s"
+                : duration.toString());
+
+        double rate = number(phase, "rate", name, Double.NaN);
+        double toRate = number(phase, "torate", name, rate);
+        if (Double.isNaN(rate) != Double.isNaN(toRate) || rate < 0 || toRate < 0) {
+            throw new IllegalArgumentException("Scenario phase " + name + " has an invalid rate");
+        }
+
+        Pacer.Profile profile = Pacer.Profile.valueOf(
+                String.valueOf(phase.containsKey("profile") ? phase.get("profile") : "constant").toUpperCase());
+        int burstSize = (int) number(phase, "burstsize", name, 100);
+        int inFlight = (int) number(phase, "inflight", name, 0);
+
+        List<String> topics = new ArrayList<>();
+        Object patterns = phase.get("topics");
+        if (patterns instanceof List) {
+            for (Object pattern : (List<?>) patterns) {
+                topics.add(String.valueOf(pattern));
+            }
+        }
+        else if (patterns != null) {
+            topics.add(String.valueOf(patterns));
+        }
+
+        return new Phase(name, durationNanos, rate, toRate, profile, burstSize, inFlight, topics);
+    }
+
+    private static double number(Map<?, ?> phase, String field, String name, double defaultValue) {
+        Object value = phase.get(field);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Double)) {
+            throw new IllegalArgumentException("Scenario phase " + name + " has an invalid " + field + ": " + value);
+        }
+        return (Double) value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        for (Phase phase : phases) {
+            description.append(description.length() == 0 ? "" : "; ").append(phase);
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Acknowledges each update after a fixed delay, as a server would, and
+ * rejects updates when too many are outstanding, as a server does when a
+ * client's queue is full.
+ *
+ * Every update has the same delay, so acknowledgements are due in the order
+ * the updates were sent, and a single thread completes them from a FIFO
+ * queue.
+ */
+class SimulatedPublisher implements Publisher {
+
+    private final long latencyNanos;
+    private final int queueLimit;
+
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Thread acker;
+    private volatile boolean running = true;
+
+    private static final class Pending {
+        final long due;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Pending(long due) {
+            this.due = due;
+        }
+    }
+
+    /**
+     * @param latency    delay before each update is acknowledged, in microseconds
+     * @param queueLimit maximum number of unacknowledged updates
+     */
+    SimulatedPublisher(long latency, int queueLimit) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latency);
+        this.queueLimit = queueLimit;
+
+        acker = new Thread(this::ack, "simulated-acks");
+        acker.setDaemon(true);
+    }
+
+    @Override
+    public void connect() {
+        acker.start();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addTopic(String topic) {
+        return enqueue().thenApply(ignore -> true);
+    }
+
+    @Override
+    public void createUpdateStream(String topic) {
+    }
+
+    @Override
+    public CompletableFuture<?> set(String topic, Object value) {
+        return enqueue();
+    }
+
+    private CompletableFuture<Object> enqueue() {
+        if (queued.incrementAndGet() > queueLimit) {
+            queued.decrementAndGet();
+            CompletableFuture<Object> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new IllegalStateException("Queue size exceeded (" + queueLimit + ")"));
+            return rejected;
+        }
+
+        Pending update = new Pending(System.nanoTime() + latencyNanos);
+        pending.add(update);
+        LockSupport.unpark(acker);
+        return update.future;
+    }
+
+    private void ack() {
+        while (running) {
+            Pending update = pending.peek();
+            if (update == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            Pacer.sleepUntil(update.due);
+            pending.poll();
+            queued.decrementAndGet();
+            update.future.complete(null);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+    }
+}
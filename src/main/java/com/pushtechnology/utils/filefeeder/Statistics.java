@@ -1,44 +1,511 @@
 package com.pushtechnology.utils.filefeeder;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
-public class Statistics {
-    private AtomicInteger updateCount;
+public class Statistics implements StatisticsMBean {
 
-    private int elapsed = 0;
-    private int period = 5;
-    private int lastCount = 0;
+    private static final Log LOG = Log.get("stats");
+
+    private static final String CSV_HEADER = "timestamp,elapsed,updates,interval_updates,updates_per_sec,"
+            + "bytes,interval_bytes,errors,interval_errors,inflight_avg,inflight_max,"
+            + "latency_p50_us,latency_p99_us,latency_p999_us,latency_max_us,cpu_cores,updates_per_cpu_sec,"
+            + "skipped,interval_skipped,conflated,interval_conflated";
+
+    private static final long SAMPLE_INTERVAL_MS = 100;
+
+    private final LongAdder updateCount = new LongAdder();
+    private final LongAdder byteCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final int period;
+    private long elapsed = 0;
+    private long lastCount = 0;
+    private long lastBytes = 0;
+    private long lastErrors = 0;
+    private long lastSkipped = 0;
+    private long lastConflated = 0;
+    private long lastCpuTime = processCpuTime();
+
+    private IntSupplier inFlightSupplier = () -> 0;
+    private LongSupplier conflatedSupplier = () -> 0;
+    private final List<Supplier<String>> reporters = new CopyOnWriteArrayList<>();
+    private long inFlightTotal = 0;
+    private long inFlightSamples = 0;
+    private int inFlightMax = 0;
+
+    private LatencyHistogram.Snapshot cumulative = new LatencyHistogram.Snapshot(new long[0]);
+    private volatile Interval lastInterval = null;
+
+    private final PrintWriter csv;
+    private final PrintWriter json;
+
+    // With --summary: where to write the totals for the run, and this process's shard
+    private final long startTime = System.currentTimeMillis();
+    private Path summaryFile = null;
+    private String shard = "0/1";
+    private String host = "";
+
+    // With --scenario: latencies in the current phase, and the totals when it started
+    private volatile LatencyHistogram phaseLatency = null;
+    private long phaseStart;
+    private long phaseUpdates;
+    private long phaseBytes;
+    private long phaseErrors;
+    private long phaseSkipped;
 
     private final ScheduledExecutorService executor;
     private final ScheduledFuture<?> scheduledFuture;
+    private final ScheduledFuture<?> samplerFuture;
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    /**
+     * The values reported for a single period.
+     */
+    private static final class Interval {
+        long timestamp;
+        long elapsed;
+        long updates;
+        long periodUpdates;
+        long rate;
+        long bytes;
+        long periodBytes;
+        long errors;
+        long periodErrors;
+        long skipped;
+        long periodSkipped;
+        long conflated;
+        long periodConflated;
+        double inFlightAvg;
+        int inFlightMax;
+        LatencyHistogram.Snapshot latency;
+        double cpuCores;
+        long ratePerCore;
+    }
 
     public Statistics() {
-        updateCount = new AtomicInteger(0);
+        this(5, null, null);
+    }
+
+    /**
+     * @param period   reporting period, in seconds
+     * @param csvFile  if not null, each period is appended to this file as CSV
+     * @param jsonFile if not null, each period is appended to this file as a line of JSON
+     */
+    public Statistics(int period, String csvFile, String jsonFile) {
+        this.period = Math.max(1, period);
+        csv = open(csvFile);
+        if (csv != null) {
+            csv.println(CSV_HEADER);
+            csv.flush();
+        }
+        json = open(jsonFile);
+
+        registerMBean(this, "Statistics");
+
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduledFuture = executor.scheduleAtFixedRate(this::report, this.period, this.period, TimeUnit.SECONDS);
+        samplerFuture = executor.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return CPU time used by this process in nanoseconds, or -1 if the
+     * JVM does not report it
+     */
+    private static long processCpuTime() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static PrintWriter open(String filename) {
+        if (filename == null) {
+            return null;
+        }
+        try {
+            return new PrintWriter(new FileWriter(filename));
+        }
+        catch (IOException ex) {
+            LOG.warn("Unable to open statistics file " + filename + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Register an MBean alongside the statistics, with the given type name.
+     */
+    public void registerMBean(Object mbean, String type) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.pushtechnology.utils.filefeeder:type=" + type);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(mbean, name);
+            }
+        }
+        catch (JMException ex) {
+            LOG.warn("Unable to register " + type + " MBean: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Add a summary line to be printed after the statistics each period.
+     */
+    public void addReporter(Supplier<String> reporter) {
+        reporters.add(reporter);
+    }
+
+    /**
+     * Provide the current number of outstanding updates, sampled a few times
+     * per second.
+     */
+    public void setInFlightSupplier(IntSupplier inFlightSupplier) {
+        this.inFlightSupplier = inFlightSupplier;
+    }
+
+    /**
+     * Write a summary of the run so far to {@code file} every period, and
+     * when stopped.
+     *
+     * @param shard identifies this process among those sharing the tree
+     */
+    public void setSummaryFile(Path file, String shard) {
+        this.summaryFile = file;
+        this.shard = shard;
+        this.host = hostName();
+    }
+
+    /**
+     * Provide the number of values replaced by later ones before they were
+     * sent, with --conflate.
+     */
+    public void setConflatedSupplier(LongSupplier conflatedSupplier) {
+        this.conflatedSupplier = conflatedSupplier;
+    }
+
+    /**
+     * Record that an update of {@code bytes} bytes has been sent.
+     */
+    public void updateSent(int bytes) {
+        updateCount.increment();
+        byteCount.add(bytes);
+    }
+
+    /**
+     * Record that an update was not sent because the value was unchanged.
+     */
+    public void updateSkipped() {
+        skippedCount.increment();
+    }
+
+    /**
+     * Record the completion of an update.
+     *
+     * @param latencyNanos time from sending the update to its acknowledgement
+     * @param error        true if the update failed
+     */
+    public void updateAcked(long latencyNanos, boolean error) {
+        if (error) {
+            errorCount.increment();
+        }
+        else {
+            latency.record(latencyNanos);
+            LatencyHistogram phase = phaseLatency;
+            if (phase != null) {
+                phase.record(latencyNanos);
+            }
+        }
+    }
+
+    /**
+     * Start counting updates and latencies for a phase of a scenario.
+     */
+    public synchronized void startPhase() {
+        phaseStart = System.currentTimeMillis();
+        phaseUpdates = updateCount.sum();
+        phaseBytes = byteCount.sum();
+        phaseErrors = errorCount.sum();
+        phaseSkipped = skippedCount.sum();
+        phaseLatency = new LatencyHistogram();
+    }
+
+    /**
+     * @return the totals since {@link #startPhase()}, labelled with
+     * {@code name}; acknowledgements count in the phase in which they arrive
+     */
+    public synchronized StatsSummary endPhase(String name) {
+        LatencyHistogram phase = phaseLatency;
+        phaseLatency = null;
+        return new StatsSummary(name, host, phaseStart, System.currentTimeMillis(),
+                                updateCount.sum() - phaseUpdates, byteCount.sum() - phaseBytes,
+                                errorCount.sum() - phaseErrors, skippedCount.sum() - phaseSkipped,
+                                phase != null ? phase.snapshotAndReset() : new LatencyHistogram.Snapshot(new long[0]));
+    }
 
-        Runnable outputTask = () -> {
-            elapsed += period;
-            int count = updateCount.get();
-            int periodCount = count - lastCount;
-            lastCount = count;
-            System.out.println("Updates: " + count
-                               + " (" + periodCount + ", " + (periodCount / period) + "/sec"
-                               + ", avg=" + (count / elapsed) + "/sec)");
-        };
+    private void sample() {
+        int depth = inFlightSupplier.getAsInt();
+        inFlightTotal += depth;
+        inFlightSamples++;
+        inFlightMax = Math.max(inFlightMax, depth);
+    }
+
+    private void report() {
+        Interval interval = new Interval();
+        elapsed += period;
+
+        interval.timestamp = System.currentTimeMillis();
+        interval.elapsed = elapsed;
+        interval.updates = updateCount.sum();
+        interval.periodUpdates = interval.updates - lastCount;
+        interval.rate = interval.periodUpdates / period;
+        interval.bytes = byteCount.sum();
+        interval.periodBytes = interval.bytes - lastBytes;
+        interval.errors = errorCount.sum();
+        interval.periodErrors = interval.errors - lastErrors;
+        interval.skipped = skippedCount.sum();
+        interval.periodSkipped = interval.skipped - lastSkipped;
+        interval.conflated = conflatedSupplier.getAsLong();
+        interval.periodConflated = interval.conflated - lastConflated;
+        interval.inFlightAvg = inFlightSamples == 0 ? 0 : (double) inFlightTotal / inFlightSamples;
+        interval.inFlightMax = inFlightMax;
+        interval.latency = latency.snapshotAndReset();
+
+        // Throughput per core of CPU used, to compare the cost of different modes
+        long cpuTime = processCpuTime();
+        if (cpuTime > 0 && cpuTime > lastCpuTime) {
+            interval.cpuCores = (cpuTime - lastCpuTime) / (double) TimeUnit.SECONDS.toNanos(period);
+            interval.ratePerCore = (long) (interval.periodUpdates / ((cpuTime - lastCpuTime) / 1e9));
+        }
+        lastCpuTime = cpuTime;
+
+        lastCount = interval.updates;
+        lastBytes = interval.bytes;
+        lastErrors = interval.errors;
+        lastSkipped = interval.skipped;
+        lastConflated = interval.conflated;
+        inFlightTotal = 0;
+        inFlightSamples = 0;
+        inFlightMax = 0;
+        cumulative = interval.latency.merge(cumulative);
+        lastInterval = interval;
+
+        LOG.info("Updates: " + interval.updates
+                           + " (" + interval.periodUpdates + ", " + interval.rate + "/sec"
+                           + ", avg=" + (interval.updates / elapsed) + "/sec)"
+                           + " bytes=" + interval.bytes
+                           + " errors=" + interval.errors
+                           + (interval.skipped > 0 ? " skipped=" + interval.skipped : "")
+                           + (interval.conflated > 0 ? " conflated=" + interval.conflated
+                              + " (" + String.format("%.1f", conflationPercent(interval)) + "%)" : "")
+                           + " inflight=" + String.format("%.1f", interval.inFlightAvg) + "/" + interval.inFlightMax
+                           + " latency(us) p50=" + micros(interval.latency.getValueAtPercentile(50))
+                           + " p99=" + micros(interval.latency.getValueAtPercentile(99))
+                           + " p99.9=" + micros(interval.latency.getValueAtPercentile(99.9))
+                           + " max=" + micros(interval.latency.getMax())
+                           + " cpu=" + String.format("%.2f", interval.cpuCores) + " cores"
+                           + " (" + interval.ratePerCore + "/sec/core)");
+        for (Supplier<String> reporter : reporters) {
+            LOG.info("  " + reporter.get());
+        }
+
+        if (csv != null) {
+            csv.println(interval.timestamp + "," + interval.elapsed + "," + interval.updates + ","
+                        + interval.periodUpdates + "," + interval.rate + ","
+                        + interval.bytes + "," + interval.periodBytes + ","
+                        + interval.errors + "," + interval.periodErrors + ","
+                        + String.format("%.2f", interval.inFlightAvg) + "," + interval.inFlightMax + ","
+                        + micros(interval.latency.getValueAtPercentile(50)) + ","
+                        + micros(interval.latency.getValueAtPercentile(99)) + ","
+                        + micros(interval.latency.getValueAtPercentile(99.9)) + ","
+                        + micros(interval.latency.getMax()) + ","
+                        + String.format("%.2f", interval.cpuCores) + "," + interval.ratePerCore + ","
+                        + interval.skipped + "," + interval.periodSkipped + ","
+                        + interval.conflated + "," + interval.periodConflated);
+            csv.flush();
+        }
+
+        if (json != null) {
+            json.println("{\"timestamp\":" + interval.timestamp
+                         + ",\"elapsed\":" + interval.elapsed
+                         + ",\"updates\":" + interval.updates
+                         + ",\"interval_updates\":" + interval.periodUpdates
+                         + ",\"updates_per_sec\":" + interval.rate
+                         + ",\"bytes\":" + interval.bytes
+                         + ",\"interval_bytes\":" + interval.periodBytes
+                         + ",\"errors\":" + interval.errors
+                         + ",\"interval_errors\":" + interval.periodErrors
+                         + ",\"inflight_avg\":" + String.format("%.2f", interval.inFlightAvg)
+                         + ",\"inflight_max\":" + interval.inFlightMax
+                         + ",\"latency_p50_us\":" + micros(interval.latency.getValueAtPercentile(50))
+                         + ",\"latency_p99_us\":" + micros(interval.latency.getValueAtPercentile(99))
+                         + ",\"latency_p999_us\":" + micros(interval.latency.getValueAtPercentile(99.9))
+                         + ",\"latency_max_us\":" + micros(interval.latency.getMax())
+                         + ",\"cpu_cores\":" + String.format("%.2f", interval.cpuCores)
+                         + ",\"updates_per_cpu_sec\":" + interval.ratePerCore
+                         + ",\"skipped\":" + interval.skipped
+                         + ",\"interval_skipped\":" + interval.periodSkipped
+                         + ",\"conflated\":" + interval.conflated
+                         + ",\"interval_conflated\":" + interval.periodConflated
+                         + "}");
+            json.flush();
+        }
+
+        writeSummary(cumulative);
+    }
+
+    private void writeSummary(LatencyHistogram.Snapshot latency) {
+        if (summaryFile == null) {
+            return;
+        }
+        StatsSummary summary = new StatsSummary(shard, host, startTime, System.currentTimeMillis(),
+                                                updateCount.sum(), byteCount.sum(), errorCount.sum(), skippedCount.sum(),
+                                                latency);
+        try {
+            summary.write(summaryFile);
+        }
+        catch (IOException ex) {
+            LOG.warn("Unable to write statistics summary " + summaryFile + ": " + ex.getMessage());
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (IOException ex) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * @return the percentage of values offered in the period which were
+     * replaced by later values rather than sent
+     */
+    private static double conflationPercent(Interval interval) {
+        long offered = interval.periodUpdates + interval.periodConflated;
+        return offered == 0 ? 0 : interval.periodConflated * 100.0 / offered;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    public long getUpdateCount() {
+        return updateCount.sum();
+    }
+
+    /**
+     * @return the latency histogram of all completed reporting periods
+     */
+    public LatencyHistogram.Snapshot getCumulativeLatency() {
+        return cumulative;
+    }
+
+    @Override
+    public long getUpdates() {
+        return updateCount.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return byteCount.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errorCount.sum();
+    }
+
+    @Override
+    public long getSkipped() {
+        return skippedCount.sum();
+    }
+
+    @Override
+    public long getConflated() {
+        return conflatedSupplier.getAsLong();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlightSupplier.getAsInt();
+    }
+
+    @Override
+    public long getUpdatesPerSecond() {
+        Interval interval = lastInterval;
+        return interval == null ? 0 : interval.rate;
+    }
+
+    @Override
+    public long getLatencyP50Micros() {
+        Interval interval = lastInterval;
+        return interval == null ? 0 : micros(interval.latency.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getLatencyP99Micros() {
+        Interval interval = lastInterval;
+        return interval == null ? 0 : micros(interval.latency.getValueAtPercentile(99));
+    }
 
-        executor = Executors.newSingleThreadScheduledExecutor();
-        scheduledFuture = executor.scheduleAtFixedRate(outputTask, period, period, TimeUnit.SECONDS);
+    @Override
+    public long getLatencyP999Micros() {
+        Interval interval = lastInterval;
+        return interval == null ? 0 : micros(interval.latency.getValueAtPercentile(99.9));
     }
 
-    public AtomicInteger getUpdateCount() {
-        return updateCount;
+    @Override
+    public long getLatencyMaxMicros() {
+        Interval interval = lastInterval;
+        return interval == null ? 0 : micros(interval.latency.getMax());
     }
 
     public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
         scheduledFuture.cancel(true);
+        samplerFuture.cancel(true);
         executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // Include latencies recorded since the last period
+        writeSummary(latency.snapshotAndReset().merge(cumulative));
+        if (csv != null) {
+            csv.close();
+        }
+        if (json != null) {
+            json.close();
+        }
     }
 }
@@ -0,0 +1,29 @@
+package com.pushtechnology.utils.filefeeder;
+
+/**
+ * JMX view of {@link Statistics}. Rates and latencies are for the most
+ * recent reporting period.
+ */
+public interface StatisticsMBean {
+    long getUpdates();
+
+    long getBytes();
+
+    long getErrors();
+
+    long getSkipped();
+
+    long getConflated();
+
+    int getInFlight();
+
+    long getUpdatesPerSecond();
+
+    long getLatencyP50Micros();
+
+    long getLatencyP99Micros();
+
+    long getLatencyP999Micros();
+
+    long getLatencyMaxMicros();
+}
@@ -0,0 +1,237 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The totals for a whole run of one feeder process, written with
+ * --summary, and merged with those of other processes by --mergestats.
+ *
+ * The file is a single JSON object. As well as the totals and latency
+ * percentiles, it holds the non-empty buckets of the latency histogram, as
+ * pairs of the bucket's highest value in nanoseconds and its count, so that
+ * percentiles can be computed across processes rather than averaged.
+ */
+final class StatsSummary {
+
+    private static final Pattern STRING = Pattern.compile("\"(\\w+)\":\"([^\"]*)\"");
+    private static final Pattern NUMBER = Pattern.compile("\"(\\w+)\":(-?\\d+)[,}]");
+    private static final Pattern BUCKET = Pattern.compile("\\[(\\d+),(\\d+)\\]");
+
+    // The process's shard, or for a phase of a scenario, the phase
+    final String name;
+    final String host;
+    // Wall-clock time of the start and end of the run, in milliseconds
+    final long start;
+    final long end;
+    final long updates;
+    final long bytes;
+    final long errors;
+    final long skipped;
+    final LatencyHistogram.Snapshot latency;
+
+    StatsSummary(String name, String host, long start, long end,
+                 long updates, long bytes, long errors, long skipped, LatencyHistogram.Snapshot latency) {
+        this.name = name;
+        this.host = host;
+        this.start = start;
+        this.end = end;
+        this.updates = updates;
+        this.bytes = bytes;
+        this.errors = errors;
+        this.skipped = skipped;
+        this.latency = latency;
+    }
+
+    /**
+     * @return updates per second over the run
+     */
+    long getRate() {
+        return updates * 1000 / Math.max(1, end - start);
+    }
+
+    String toJson() {
+        return toJson("shard");
+    }
+
+    /**
+     * @param nameField the name of the field holding {@link #name}
+     */
+    String toJson(String nameField) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"").append(nameField).append("\":\"").append(name).append('"')
+            .append(",\"host\":\"").append(host).append('"')
+            .append(",\"start\":").append(start)
+            .append(",\"end\":").append(end)
+            .append(",\"updates\":").append(updates)
+            .append(",\"bytes\":").append(bytes)
+            .append(",\"errors\":").append(errors)
+            .append(",\"skipped\":").append(skipped)
+            .append(",\"updates_per_sec\":").append(getRate())
+            .append(",\"latency_p50_us\":").append(micros(latency.getValueAtPercentile(50)))
+            .append(",\"latency_p99_us\":").append(micros(latency.getValueAtPercentile(99)))
+            .append(",\"latency_p999_us\":").append(micros(latency.getValueAtPercentile(99.9)))
+            .append(",\"latency_max_us\":").append(micros(latency.getMax()))
+            .append(",\"latency_histogram_ns\":[");
+        boolean first = true;
+        for (int i = 0; i < latency.getBucketCount(); i++) {
+            long count = latency.getCountAt(i);
+            if (count != 0) {
+                json.append(first ? "" : ",").append('[').append(LatencyHistogram.highestValueAt(i)).append(',').append(count).append(']');
+                first = false;
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Write the summary to a temporary file which then replaces
+     * {@code file}, so that a reader never sees a partial summary.
+     */
+    void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, (toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Read a summary written by {@link #write}.
+     */
+    static StatsSummary read(Path file) throws IOException {
+        return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    static StatsSummary parse(String json) {
+        int histogram = json.indexOf("\"latency_histogram_ns\"");
+        if (histogram < 0) {
+            throw new IllegalArgumentException("Not a statistics summary");
+        }
+        String totals = json.substring(0, histogram);
+
+        String shard = "";
+        String host = "";
+        Matcher matcher = STRING.matcher(totals);
+        while (matcher.find()) {
+            if (matcher.group(1).equals("shard")) {
+                shard = matcher.group(2);
+            }
+            else if (matcher.group(1).equals("host")) {
+                host = matcher.group(2);
+            }
+        }
+
+        long start = 0, end = 0, updates = 0, bytes = 0, errors = 0, skipped = 0;
+        matcher = NUMBER.matcher(totals + "}");
+        while (matcher.find()) {
+            long value = Long.parseLong(matcher.group(2));
+            switch (matcher.group(1)) {
+                case "start": start = value; break;
+                case "end": end = value; break;
+                case "updates": updates = value; break;
+                case "bytes": bytes = value; break;
+                case "errors": errors = value; break;
+                case "skipped": skipped = value; break;
+                default: break;
+            }
+        }
+
+        List<long[]> buckets = new ArrayList<>();
+        int size = 0;
+        matcher = BUCKET.matcher(json.substring(histogram));
+        while (matcher.find()) {
+            int index = LatencyHistogram.indexOf(Long.parseLong(matcher.group(1)));
+            buckets.add(new long[] { index, Long.parseLong(matcher.group(2)) });
+            size = Math.max(size, index + 1);
+        }
+        long[] counts = new long[size];
+        for (long[] bucket : buckets) {
+            counts[(int) bucket[0]] += bucket[1];
+        }
+
+        return new StatsSummary(shard, host, start, end, updates, bytes, errors, skipped, new LatencyHistogram.Snapshot(counts));
+    }
+
+    /**
+     * Combine the summaries of processes which ran at the same time. The
+     * run is taken to last from the earliest start to the latest end.
+     */
+    static StatsSummary merge(List<StatsSummary> summaries) {
+        long start = Long.MAX_VALUE, end = 0, updates = 0, bytes = 0, errors = 0, skipped = 0;
+        LatencyHistogram.Snapshot latency = new LatencyHistogram.Snapshot(new long[0]);
+        for (StatsSummary summary : summaries) {
+            start = Math.min(start, summary.start);
+            end = Math.max(end, summary.end);
+            updates += summary.updates;
+            bytes += summary.bytes;
+            errors += summary.errors;
+            skipped += summary.skipped;
+            latency = latency.merge(summary.latency);
+        }
+        return new StatsSummary(summaries.size() + " processes", "", start == Long.MAX_VALUE ? 0 : start, end,
+                                updates, bytes, errors, skipped, latency);
+    }
+
+    /**
+     * @return a description of any shards missing from, or repeated in, a
+     * set of summaries, or null if they are all present once
+     */
+    static String checkShards(List<StatsSummary> summaries) {
+        TreeSet<String> seen = new TreeSet<>();
+        List<String> repeated = new ArrayList<>();
+        int count = 0;
+        for (StatsSummary summary : summaries) {
+            if (!seen.add(summary.name)) {
+                repeated.add(summary.name);
+            }
+            int slash = summary.name.indexOf('/');
+            if (slash > 0) {
+                count = Math.max(count, Integer.parseInt(summary.name.substring(slash + 1)));
+            }
+        }
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (!seen.contains(i + "/" + count)) {
+                missing.add(i + "/" + count);
+            }
+        }
+        if (missing.isEmpty() && repeated.isEmpty()) {
+            return null;
+        }
+        return (missing.isEmpty() ? "" : "missing shards " + missing)
+                + (missing.isEmpty() || repeated.isEmpty() ? "" : ", ")
+                + (repeated.isEmpty() ? "" : "repeated shards " + repeated);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return name + (host.isEmpty() ? "" : " on " + host)
+                + ": updates=" + updates
+                + " (" + getRate() + "/sec over " + (end - start) / 1000.0 + "s)"
+                + " bytes=" + bytes
+                + " errors=" + errors
+                + (skipped > 0 ? " skipped=" + skipped : "")
+                + " latency(us) p50=" + micros(latency.getValueAtPercentile(50))
+                + " p99=" + micros(latency.getValueAtPercentile(99))
+                + " p99.9=" + micros(latency.getValueAtPercentile(99.9))
+                + " max=" + micros(latency.getMax());
+    }
+}
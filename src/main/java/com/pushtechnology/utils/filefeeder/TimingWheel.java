@@ -0,0 +1,163 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * A hashed timing wheel of repeating timers, driven by a single thread.
+ *
+ * Time is divided into ticks, and each timer is kept in the bucket for the
+ * tick it is next due, modulo the number of buckets. Each tick only visits
+ * the timers in one bucket, so the cost of a tick depends on how many timers
+ * hash to it rather than how many there are in total; a timer due further
+ * away than one turn of the wheel is passed over once per turn. There is no
+ * thread or sleep per timer, so millions of timers can be scheduled.
+ *
+ * Timers fire no more precisely than one tick. If firing them takes longer
+ * than the tick, the wheel falls behind and catches up, and how late timers
+ * fire is recorded.
+ */
+class TimingWheel<T> {
+
+    private static final class Timer<T> {
+        final T item;
+        final long intervalTicks;
+        // Tick at which the timer is next due; relative until it joins the wheel
+        long deadline;
+        Timer<T> next;
+
+        Timer(T item, long intervalTicks, long deadline) {
+            this.item = item;
+            this.intervalTicks = intervalTicks;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickNanos;
+    private final Timer<T>[] buckets;
+    private final int mask;
+
+    // Timers scheduled by other threads, added to the wheel at the next tick
+    private final Queue<Timer<T>> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder fired = new LongAdder();
+    private final LatencyHistogram lag = new LatencyHistogram();
+
+    private volatile boolean stopped = false;
+    private volatile Thread runner;
+
+    /**
+     * @param tickNanos  the resolution of the wheel
+     * @param wheelSize  the number of buckets, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickNanos, int wheelSize) {
+        this.tickNanos = Math.max(1, tickNanos);
+        int buckets = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.buckets = (Timer<T>[]) new Timer[buckets];
+        this.mask = buckets - 1;
+    }
+
+    /**
+     * Fire {@code item} every {@code intervalNanos}, at least one tick. The
+     * first firing is at a random point within the first interval, so that
+     * items with the same interval are spread across it rather than all
+     * firing in the same tick.
+     */
+    void schedule(T item, long intervalNanos) {
+        long intervalTicks = Math.max(1, intervalNanos / tickNanos);
+        pending.add(new Timer<>(item, intervalTicks, 1 + ThreadLocalRandom.current().nextLong(intervalTicks)));
+        size.incrementAndGet();
+    }
+
+    /**
+     * Fire timers until {@link #stop()} is called.
+     *
+     * @param action called with each item as its timer fires; if it returns
+     *               false, the timer is cancelled
+     */
+    void run(Predicate<T> action) {
+        runner = Thread.currentThread();
+        final long start = System.nanoTime();
+        long tick = 0;
+
+        while (!stopped) {
+            Timer<T> timer;
+            while ((timer = pending.poll()) != null) {
+                timer.deadline += tick;
+                add(timer);
+            }
+
+            // Detach the bucket so timers rescheduled into it now aren't fired again this tick
+            int index = (int) (tick & mask);
+            timer = buckets[index];
+            buckets[index] = null;
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                if (timer.deadline > tick) {
+                    // Due on a later turn of the wheel
+                    add(timer);
+                }
+                else {
+                    lag.record(System.nanoTime() - (start + timer.deadline * tickNanos));
+                    fired.increment();
+                    if (action.test(timer.item)) {
+                        timer.deadline += timer.intervalTicks;
+                        add(timer);
+                    }
+                    else {
+                        size.decrementAndGet();
+                    }
+                }
+                timer = next;
+            }
+
+            tick++;
+            long due = start + tick * tickNanos;
+            long remaining;
+            while (!stopped && (remaining = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    private void add(Timer<T> timer) {
+        int index = (int) (timer.deadline & mask);
+        timer.next = buckets[index];
+        buckets[index] = timer;
+    }
+
+    void stop() {
+        stopped = true;
+        Thread thread = runner;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return the number of timers scheduled
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * @return the number of timers fired and how late they fired since the
+     * last report
+     */
+    String report() {
+        LatencyHistogram.Snapshot snapshot = lag.snapshotAndReset();
+        return "schedule timers=" + size.get() + " fired=" + fired.sumThenReset()
+                + " lag(us) p50=" + TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(50))
+                + " p99=" + TimeUnit.NANOSECONDS.toMicros(snapshot.getValueAtPercentile(99))
+                + " max=" + TimeUnit.NANOSECONDS.toMicros(snapshot.getMax());
+    }
+}
@@ -0,0 +1,85 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Updates one topic every interval, waiting for each update to be
+ * acknowledged before sending the next. With --virtualthreads each topic has
+ * its own feeder on its own virtual thread, so waiting parks only that
+ * thread. Intervals missed while waiting are skipped rather than sent in a
+ * burst.
+ */
+final class TopicFeeder implements Runnable {
+
+    private static final Log LOG = Log.get("update");
+
+    // How often a waiting feeder checks whether it should stop
+    private static final long STOP_CHECK = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Sends one update to the topic.
+     */
+    interface Update {
+        /**
+         * @param onComplete to be called with whether the update succeeded,
+         *                   once it has been acknowledged or has failed
+         */
+        void send(Consumer<Boolean> onComplete);
+    }
+
+    private final String topic;
+    private final long interval;
+    private final Update update;
+    private final BooleanSupplier running;
+
+    /**
+     * @param interval nanoseconds between updates
+     * @param running  checked before each update, and while waiting; the
+     *                 feeder returns once it is false
+     */
+    TopicFeeder(String topic, long interval, Update update, BooleanSupplier running) {
+        this.topic = topic;
+        this.interval = interval;
+        this.update = update;
+        this.running = running;
+    }
+
+    @Override
+    public void run() {
+        final Semaphore acknowledged = new Semaphore(0);
+        // Start at a random point in the interval, so topics are spread across it
+        long next = System.nanoTime() + (interval > 0 ? ThreadLocalRandom.current().nextLong(interval) : 0);
+
+        while (running.getAsBoolean()) {
+            long remaining;
+            while ((remaining = next - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(Math.min(remaining, STOP_CHECK));
+                if (!running.getAsBoolean()) {
+                    return;
+                }
+            }
+
+            try {
+                update.send(success -> acknowledged.release());
+                // An update which is never acknowledged doesn't stop the feeder being stopped
+                while (!acknowledged.tryAcquire(STOP_CHECK, TimeUnit.NANOSECONDS)) {
+                    if (!running.getAsBoolean()) {
+                        return;
+                    }
+                }
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+            catch (RuntimeException ex) {
+                LOG.warn("Unable to update " + topic + ": " + ex.getMessage());
+            }
+            next = Math.max(next + interval, System.nanoTime());
+        }
+    }
+}
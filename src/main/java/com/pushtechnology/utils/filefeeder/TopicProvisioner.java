@@ -0,0 +1,117 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates topics asynchronously, with a bounded number of addTopic() calls
+ * in flight. Each topic is only requested once per run, however many files
+ * map to it.
+ */
+class TopicProvisioner {
+
+    private static final Log LOG = Log.get("topics");
+
+    private final Publisher publisher;
+    private final int window;
+    private final Semaphore permits;
+
+    private final Map<String, CompletableFuture<?>> topics = new ConcurrentHashMap<>();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong existing = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    TopicProvisioner(Publisher publisher, int window) {
+        this.publisher = publisher;
+        this.window = Math.max(1, window);
+        this.permits = new Semaphore(this.window);
+    }
+
+    /**
+     * Request creation of a topic, unless it has already been requested.
+     *
+     * @return a future which completes once the topic exists (or creation
+     * has failed)
+     */
+    CompletableFuture<?> provision(String topic) {
+        CompletableFuture<?> future = topics.get(topic);
+        if (future != null) {
+            return future;
+        }
+
+        CompletableFuture<Object> placeholder = new CompletableFuture<>();
+        future = topics.putIfAbsent(topic, placeholder);
+        if (future != null) {
+            return future;
+        }
+
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            placeholder.completeExceptionally(ex);
+            return placeholder;
+        }
+
+        CompletableFuture<Boolean> result;
+        try {
+            result = publisher.addTopic(topic);
+        }
+        catch (RuntimeException ex) {
+            // Such as an invalid topic path
+            permits.release();
+            failed.incrementAndGet();
+            LOG.warn("Unable to create topic \"" + topic + "\": " + ex.getMessage());
+            placeholder.completeExceptionally(ex);
+            return placeholder;
+        }
+
+        result.whenComplete((created, ex) -> {
+            permits.release();
+            if (ex != null) {
+                failed.incrementAndGet();
+                LOG.warn("Unable to create topic \"" + topic + "\": " + ex.getMessage());
+                placeholder.completeExceptionally(ex);
+                return;
+            }
+            if (created) {
+                this.created.incrementAndGet();
+            }
+            else {
+                existing.incrementAndGet();
+            }
+            placeholder.complete(created);
+        });
+
+        return placeholder;
+    }
+
+    /**
+     * Wait for all outstanding addTopic() calls to complete.
+     */
+    void await() throws InterruptedException {
+        permits.acquire(window);
+        permits.release(window);
+    }
+
+    long getCreated() {
+        return created.get();
+    }
+
+    long getExisting() {
+        return existing.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    int size() {
+        return topics.size();
+    }
+}
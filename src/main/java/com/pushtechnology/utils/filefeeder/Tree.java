@@ -1,31 +1,55 @@
 package com.pushtechnology.utils.filefeeder;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Random;
 
 public class Tree<T> {
 
     private TreeNode<T> root;
 
+    // Every node which has data, in no particular order; each node knows its own index
+    private final ArrayList<TreeNode<T>> nodesWithData = new ArrayList<>();
+
     final class TreeNode<T> {
         String name;
         T data;
         TreeNode<T> parent;
-        List<TreeNode<T>> children;
+
+        // Full path from the root, built once when the node is created
+        final String fullName;
+
+        // Created on demand, as most nodes are leaves
+        Map<String, TreeNode<T>> children;
+        ArrayList<TreeNode<T>> childrenWithData;
+
+        // Position in the tree's nodesWithData, and in the parent's childrenWithData
+        int dataIndex = -1;
+        int siblingIndex = -1;
 
         TreeNode(String name, T data, TreeNode<T> parent) {
             this.name = name;
             this.data = data;
             this.parent = parent;
-            this.children = new LinkedList<>();
+            this.fullName = parent == null || parent.parent == null
+                    ? name.intern()
+                    : (parent.fullName + "/" + name).intern();
         }
 
         public void setData(T data) {
             this.data = data;
         }
+
+        Map<String, TreeNode<T>> children() {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            return children;
+        }
     }
 
     public Tree() {
@@ -33,28 +57,93 @@ public class Tree<T> {
     }
 
     public TreeNode<T> add(String path, T data) {
-        LinkedList<TreeNode<T>> nodes = makeNodes(path);
-        TreeNode last = nodes.getLast();
-        if(last != null) {
-            last.setData(data);
+        TreeNode<T> node = root;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            if (end > start) {
+                String part = path.substring(start, end);
+                TreeNode<T> child = node.children().get(part);
+                if (child == null) {
+                    child = new TreeNode<>(part, null, node);
+                    node.children.put(part, child);
+                }
+                node = child;
+            }
+            start = end + 1;
+        }
+
+        if (node == root) {
+            return null;
+        }
+        setData(node, data);
+        return node;
+    }
+
+    private void setData(TreeNode<T> node, T data) {
+        boolean had = node.data != null;
+        node.setData(data);
+
+        if (!had && data != null) {
+            node.dataIndex = nodesWithData.size();
+            nodesWithData.add(node);
+
+            TreeNode<T> parent = node.parent;
+            if (parent.childrenWithData == null) {
+                parent.childrenWithData = new ArrayList<>(4);
+            }
+            node.siblingIndex = parent.childrenWithData.size();
+            parent.childrenWithData.add(node);
+        }
+        else if (had && data == null) {
+            unindex(node);
+        }
+    }
+
+    /**
+     * Remove a node from the flat lists of nodes with data, by moving the
+     * last entry of each list into its place.
+     */
+    private void unindex(TreeNode<T> node) {
+        if (node.dataIndex == -1) {
+            return;
+        }
+        swapRemove(nodesWithData, node.dataIndex, true);
+        swapRemove(node.parent.childrenWithData, node.siblingIndex, false);
+        node.dataIndex = -1;
+        node.siblingIndex = -1;
+    }
+
+    private void swapRemove(ArrayList<TreeNode<T>> list, int index, boolean data) {
+        TreeNode<T> last = list.remove(list.size() - 1);
+        if (index < list.size()) {
+            list.set(index, last);
+            if (data) {
+                last.dataIndex = index;
+            }
+            else {
+                last.siblingIndex = index;
+            }
         }
-        return last;
     }
 
     public TreeNode<T> remove(String path) {
-        LinkedList<TreeNode<T>> pathToNode = pathToNode(path);
-        if(pathToNode.size() == 0) {
+        TreeNode<T> last = get(path);
+        if(last == null) {
             return null;
         }
 
-        TreeNode<T> last = pathToNode.getLast();
         if(last.parent == null) {
             // This is the root node
             root = null;
             return last;
         }
 
-        if(last.parent.children.remove(last)) {
+        if(last.parent.children.remove(last.name) != null) {
+            removeData(last);
             return last;
         }
         else {
@@ -62,113 +151,118 @@ public class Tree<T> {
         }
     }
 
-    public TreeNode<T> get(String path) {
-        LinkedList<TreeNode<T>> nodes = pathToNode(path);
-        if(nodes.size() == 0) {
-            return null;
+    private void removeData(TreeNode<T> node) {
+        unindex(node);
+        if (node.children != null) {
+            node.children.values().forEach(this::removeData);
         }
-        return nodes.getLast();
     }
 
-    public LinkedList<TreeNode<T>> getSiblings(TreeNode<T> node) {
-        List<TreeNode<T>> siblings = node.parent.children;
-
-        // Remove this node from the children, can't be your own sibling.
-        if(siblings.size() > 1) {
-            return new LinkedList<>(siblings
-                    .stream()
-                    .filter(n -> n.name != node.name)
-                    .collect(Collectors.toList()));
+    public TreeNode<T> get(String path) {
+        TreeNode<T> node = root;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            if (end > start) {
+                if (node.children == null) {
+                    return null;
+                }
+                node = node.children.get(path.substring(start, end));
+                if (node == null) {
+                    return null;
+                }
+            }
+            start = end + 1;
         }
-        return new LinkedList<TreeNode<T>>();
+        return node == root ? null : node;
     }
 
-    public LinkedList<TreeNode<T>> getSiblings(String path) {
-        LinkedList<TreeNode<T>> nodes = pathToNode(path);
-        if(nodes.size() > 0) {
-            return getSiblings(nodes.getLast());
+    public List<TreeNode<T>> getSiblings(TreeNode<T> node) {
+        if(node.parent == null || node.parent.children == null) {
+            return new ArrayList<>();
         }
-        return new LinkedList<TreeNode<T>>();
-    }
-
-    private LinkedList<TreeNode<T>> makeNodes(String path) {
-        LinkedList<TreeNode<T>> nodes = new LinkedList<>();
-        String[] parts = path.split("/");
-
-        TreeNode<T> currentNode = root;
-
-        for(var part : parts) {
 
-            // Look for part in children of current node
-            boolean found = false;
-            List<TreeNode<T>> children = currentNode.children;
-            for(var node : children) {
-                if(node.name.equals(part)) {
-                    found = true;
-                    currentNode = node;
-                    nodes.add(node);
-                    break;
-                }
-            }
-
-            if(!found) {
-                TreeNode<T> node = new TreeNode<>(part, null, currentNode);
-                currentNode.children.add(node);
-                currentNode = node;
-                nodes.add(node);
+        // Can't be your own sibling.
+        List<TreeNode<T>> siblings = new ArrayList<>(node.parent.children.size());
+        for (TreeNode<T> sibling : node.parent.children.values()) {
+            if (sibling != node) {
+                siblings.add(sibling);
             }
         }
+        return siblings;
+    }
 
-        return nodes;
+    public List<TreeNode<T>> getSiblings(String path) {
+        TreeNode<T> node = get(path);
+        if(node != null) {
+            return getSiblings(node);
+        }
+        return new ArrayList<>();
     }
 
-    private LinkedList<TreeNode<T>> pathToNode(String path) {
-        LinkedList<TreeNode<T>> nodes = new LinkedList<>();
-        String[] parts = path.split("/");
+    /**
+     * Choose a random sibling of {@code node} which has data, in constant
+     * time.
+     *
+     * @return the sibling, or null if there is no other node with data at
+     * the same level
+     */
+    public TreeNode<T> getRandomSibling(TreeNode<T> node, Random random) {
+        if (node.parent == null) {
+            return null;
+        }
+        List<TreeNode<T>> candidates = node.parent.childrenWithData;
+        if (candidates == null) {
+            return null;
+        }
 
-        TreeNode<T> node = root;
-        for(var part : parts) {
-            var children = node.children;
-            var found = false;
-            for(var child : children) {
-                if (child.name.equals(part)) {
-                    found = true;
-                    nodes.add(child);
-                    node = child;
-                    break;
-                }
-            }
-            if(! found) {
-                return new LinkedList<>();
+        int size = candidates.size();
+        if (node.siblingIndex != -1) {
+            // Pick from every other entry; if we land on ourselves, take the last entry instead
+            if (size < 2) {
+                return null;
             }
+            int i = random.nextInt(size - 1);
+            return i == node.siblingIndex ? candidates.get(size - 1) : candidates.get(i);
         }
-
-        return nodes;
+        return size == 0 ? null : candidates.get(random.nextInt(size));
     }
 
-    public LinkedList<TreeNode<T>> getNodesWithData() {
-        return getNodesWithData(root);
+    /**
+     * @return a new list of every node which has data, which the caller may
+     * reorder
+     */
+    public List<TreeNode<T>> getNodesWithData() {
+        return new ArrayList<>(nodesWithData);
     }
 
-    public LinkedList<TreeNode<T>> getNodesWithData(TreeNode<T> node) {
-        LinkedList<TreeNode<T>> nodes = new LinkedList<>();
+    public List<TreeNode<T>> getNodesWithData(TreeNode<T> node) {
+        List<TreeNode<T>> nodes = new ArrayList<>();
+        collectNodesWithData(node, nodes);
+        return nodes;
+    }
 
+    private void collectNodesWithData(TreeNode<T> node, List<TreeNode<T>> nodes) {
         if(node.data != null) {
             nodes.add(node);
         }
+        if(node.children != null) {
+            node.children.values().forEach(child -> collectNodesWithData(child, nodes));
+        }
+    }
 
-        node.children.forEach(child -> {
-           nodes.addAll(getNodesWithData(child));
-        });
-
-        return nodes;
+    /**
+     * @return the number of nodes with data
+     */
+    public int size() {
+        return nodesWithData.size();
     }
 
     public String getFullName(TreeNode<T> node) {
-        while(node.parent != root) {
-            return getFullName(node.parent) + "/" + node.name;
-        }
-        return node.name;
+        return node.fullName;
     }
 
     public void debug() {
@@ -177,9 +271,15 @@ public class Tree<T> {
     public void _debug(TreeNode<T> node, List<String> path) {
         String str = String.join("/", path);
         System.out.println(str + " => " + node.data);
-        node.children.forEach(child -> {
-            path.add(child.name);
-            _debug(child, path);
-        });
+        if (node.children == null) {
+            return;
+        }
+        List<String> names = new ArrayList<>(node.children.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            path.add(name);
+            _debug(node.children.get(name), path);
+            path.remove(path.size() - 1);
+        }
     }
 }
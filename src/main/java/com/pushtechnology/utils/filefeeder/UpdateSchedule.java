@@ -0,0 +1,122 @@
+package com.pushtechnology.utils.filefeeder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * How often to update each topic, by topic path pattern.
+ *
+ * Each rule is {@code pattern=interval}. In a pattern, {@code *} matches
+ * within one level of the topic path, {@code **} matches across levels and
+ * {@code ?} matches one character. The interval is a number with an optional
+ * unit of us, ms (the default), s or m. The first rule which matches a topic
+ * applies.
+ */
+class UpdateSchedule {
+
+    private final List<String> rules = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<Long> intervals = new ArrayList<>();
+
+    /**
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    UpdateSchedule(List<String> rules) {
+        for (String rule : rules) {
+            int equals = rule.lastIndexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Schedule rule must be pattern=interval: " + rule);
+            }
+            this.rules.add(rule);
+            patterns.add(glob(rule.substring(0, equals).trim()));
+            intervals.add(parseInterval(rule.substring(equals + 1).trim()));
+        }
+    }
+
+    /**
+     * @return the interval in nanoseconds for {@code topic}, or -1 if no rule
+     * matches it
+     */
+    long intervalNanos(String topic) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(topic).matches()) {
+                return intervals.get(i);
+            }
+        }
+        return -1;
+    }
+
+    static long parseInterval(String interval) {
+        int i = 0;
+        while (i < interval.length() && (Character.isDigit(interval.charAt(i)) || interval.charAt(i) == '.')) {
+            i++;
+        }
+        final double number;
+        try {
+            number = Double.parseDouble(interval.substring(0, i));
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid schedule interval: " + interval);
+        }
+
+        final TimeUnit unit;
+        switch (interval.substring(i).trim().toLowerCase()) {
+            case "us":
+                unit = TimeUnit.MICROSECONDS;
+                break;
+            case "":
+            case "ms":
+                unit = TimeUnit.MILLISECONDS;
+                break;
+            case "s":
+                unit = TimeUnit.SECONDS;
+                break;
+            case "m":
+                unit = TimeUnit.MINUTES;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid schedule interval: " + interval);
+        }
+        long nanos = (long) (number * unit.toNanos(1));
+        if (nanos <= 0) {
+            throw new IllegalArgumentException("Schedule interval must be positive: " + interval);
+        }
+        return nanos;
+    }
+
+    static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int literal = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (i > literal) {
+                regex.append(Pattern.quote(glob.substring(literal, i)));
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            }
+            else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            }
+            else {
+                regex.append("[^/]*");
+            }
+            literal = i + 1;
+        }
+        if (literal < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literal)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    @Override
+    public String toString() {
+        return String.join(", ", rules);
+    }
+}
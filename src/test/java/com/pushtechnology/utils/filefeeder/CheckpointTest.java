@@ -0,0 +1,116 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+class CheckpointTest {
+
+    @Test
+    void advancesOnlyPastAcknowledgedRecords() throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path data = Files.write(dir.resolve("data"), "a\nb\nc\n".getBytes());
+        Path file = dir.resolve("checkpoint");
+
+        Checkpoint checkpoint = new Checkpoint(file, 60000);
+        Checkpoint.Progress progress = checkpoint.track(data);
+        Consumer<Boolean> a = progress.sent(0, 2);
+        Consumer<Boolean> b = progress.sent(2, 4);
+        Consumer<Boolean> c = progress.sent(4, 6);
+
+        b.accept(true);
+        assert(checkpoint.getOffset(data) == 0);
+        a.accept(true);
+        assert(checkpoint.getOffset(data) == 4);
+        checkpoint.close();
+
+        checkpoint = new Checkpoint(file, 60000);
+        assert(checkpoint.size() == 1);
+        assert(checkpoint.getOffset(data) == 4);
+        assert(!checkpoint.isComplete(data));
+
+        c = checkpoint.track(data).sent(4, 6);
+        c.accept(true);
+        assert(checkpoint.isComplete(data));
+        checkpoint.close();
+    }
+
+    @Test
+    void restartsTruncatedFiles() throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path data = Files.write(dir.resolve("data"), "a\nb\n".getBytes());
+
+        Checkpoint checkpoint = new Checkpoint(dir.resolve("checkpoint"), 60000);
+        checkpoint.track(data).sent(0, 4).accept(true);
+        assert(checkpoint.getOffset(data) == 4);
+
+        Files.write(data, "a\n".getBytes());
+        assert(checkpoint.getOffset(data) == 0);
+        checkpoint.close();
+    }
+
+    @Test
+    void staysBeforeFailedRecords() throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path data = Files.write(dir.resolve("data"), "a\nb\nc\n".getBytes());
+        Path file = dir.resolve("checkpoint");
+
+        Checkpoint checkpoint = new Checkpoint(file, 60000);
+        Checkpoint.Progress progress = checkpoint.track(data);
+        Consumer<Boolean> a = progress.sent(0, 2);
+        Consumer<Boolean> b = progress.sent(2, 4);
+        Consumer<Boolean> c = progress.sent(4, 6);
+
+        a.accept(true);
+        b.accept(false);
+        c.accept(true);
+        assert(checkpoint.getOffset(data) == 2);
+        checkpoint.close();
+
+        // The failed record is published again after a restart
+        checkpoint = new Checkpoint(file, 60000);
+        assert(checkpoint.getOffset(data) == 2);
+        checkpoint.close();
+    }
+
+    @Test
+    void trackerIsDroppedOnceReadAndAcknowledged() throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path data = Files.write(dir.resolve("data"), "a\nb\n".getBytes());
+
+        Checkpoint checkpoint = new Checkpoint(dir.resolve("checkpoint"), 60000);
+        Checkpoint.Progress progress = checkpoint.track(data);
+        Consumer<Boolean> a = progress.sent(0, 2);
+        a.accept(true);
+        // Still being read
+        assert(checkpoint.tracked() == 1);
+
+        Consumer<Boolean> b = progress.sent(2, 4);
+        progress.read();
+        assert(checkpoint.tracked() == 1);
+        b.accept(true);
+        assert(checkpoint.tracked() == 0);
+        assert(checkpoint.getOffset(data) == 4);
+
+        // A failed record keeps the tracker, as it holds the offset back
+        progress = checkpoint.track(data);
+        progress.sent(4, 6).accept(false);
+        progress.read();
+        assert(checkpoint.tracked() == 1);
+        checkpoint.close();
+    }
+
+    @Test
+    void failedWholeFileIsNotComplete() throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path data = Files.write(dir.resolve("data"), "whole".getBytes());
+
+        Checkpoint checkpoint = new Checkpoint(dir.resolve("checkpoint"), 60000);
+        checkpoint.track(data).sent(0, 5).accept(false);
+        assert(!checkpoint.isComplete(data));
+        checkpoint.close();
+    }
+}
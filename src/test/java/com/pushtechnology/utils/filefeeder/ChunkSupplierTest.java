@@ -0,0 +1,89 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+class ChunkSupplierTest {
+
+    @Test
+    void valueIsDecodedOnceAndShared() {
+        AtomicInteger decoded = new AtomicInteger();
+        Function<byte[], Object> decoder = bytes -> {
+            decoded.incrementAndGet();
+            return new String(bytes);
+        };
+
+        // Siblings taking their data from this topic use the same supplier
+        ChunkSupplier supplier = new ChunkSupplier("value".getBytes());
+        ChunkSupplier.Value first = supplier.getValue(decoder);
+        ChunkSupplier.Value second = supplier.getValue(decoder);
+
+        assert(decoded.get() == 1);
+        assert(first == second);
+        assert(first.value.equals("value"));
+        assert(first.size == 5);
+        assert(first.fingerprint == Fingerprints.hash("value".getBytes()));
+    }
+
+    @Test
+    void invalidValueIsCached() {
+        AtomicInteger decoded = new AtomicInteger();
+        Function<byte[], Object> decoder = bytes -> {
+            decoded.incrementAndGet();
+            return null;
+        };
+
+        ChunkSupplier supplier = new ChunkSupplier("invalid".getBytes());
+        assert(supplier.getValue(decoder) == null);
+        assert(supplier.getValue(decoder) == null);
+        assert(decoded.get() == 1);
+    }
+
+    @Test
+    void fingerprintIsOfDecodedBytes() {
+        // As with --timestamp prefix, where the same payload has a different prefix each time
+        Function<byte[], byte[]> strip = bytes -> Arrays.copyOfRange(bytes, 2, bytes.length);
+        Function<byte[], Object> decoder = String::new;
+
+        ChunkSupplier.Value first = new ChunkSupplier("1 value".getBytes()).getValue(strip, decoder);
+        ChunkSupplier.Value second = new ChunkSupplier("2 value".getBytes()).getValue(strip, decoder);
+        assert(first.value.equals("value"));
+        assert(first.size == 5);
+        assert(first.fingerprint == Fingerprints.hash("value".getBytes()));
+        assert(first.fingerprint == second.fingerprint);
+
+        // Nothing to decode
+        assert(new ChunkSupplier("1".getBytes()).getValue(bytes -> null, decoder) == null);
+    }
+
+    @Test
+    void recordsAreDecodedOnce() {
+        RecordList records = new RecordList();
+        records.add("a".getBytes(), 0, 2);
+        records.add("invalid".getBytes(), 2, 10);
+        AtomicInteger decoded = new AtomicInteger();
+        Function<byte[], Object> decoder = bytes -> {
+            decoded.incrementAndGet();
+            String value = new String(bytes);
+            return value.equals("invalid") ? null : value;
+        };
+
+        ChunkSupplier supplier = new ChunkSupplier(records);
+        int invalid = 0;
+        for (int i = 0; i < 100; i++) {
+            ChunkSupplier.Value value = supplier.getRandomValue(decoder);
+            if (value == null) {
+                invalid++;
+            }
+            else {
+                assert(value.value.equals("a"));
+            }
+        }
+
+        assert(invalid > 0 && invalid < 100);
+        assert(decoded.get() == 2);
+    }
+}
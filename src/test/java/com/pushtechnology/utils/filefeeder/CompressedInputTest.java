@@ -0,0 +1,78 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+class CompressedInputTest {
+
+    @Test
+    void stripsCompressionSuffixes() {
+        assert(CompressedInput.stripCompression("a/b.json.gz").equals("a/b.json"));
+        assert(CompressedInput.stripCompression("a/b.JSON.ZZ").equals("a/b.JSON"));
+        assert(CompressedInput.stripCompression("a/b.json").equals("a/b.json"));
+        assert(CompressedInput.isArchive("a.ZIP"));
+        assert(!CompressedInput.isCompressed("a.zip"));
+    }
+
+    @Test
+    void inflatesRawDeflateAndZlib() throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(raw, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            out.write("raw".getBytes());
+        }
+        ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(zlib)) {
+            out.write("zlib".getBytes());
+        }
+
+        byte[] data = CompressedInput.inflate("a.deflate", new ByteArrayInputStream(raw.toByteArray())).readAllBytes();
+        assert(new String(data).equals("raw"));
+        data = CompressedInput.inflate("a.zz", new ByteArrayInputStream(zlib.toByteArray())).readAllBytes();
+        assert(new String(data).equals("zlib"));
+    }
+
+    @Test
+    void readsArchiveEntries() throws IOException {
+        Path archive = Files.createTempDirectory("archive").resolve("data.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("a.json"));
+            out.write("a".getBytes());
+            out.putNextEntry(new ZipEntry("dir/"));
+            out.putNextEntry(new ZipEntry("dir/b.txt.gz"));
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write("b".getBytes());
+            gzip.finish();
+            out.putNextEntry(new ZipEntry("skipped"));
+            out.write("skipped".getBytes());
+            // Entries which would be outside the archive
+            out.putNextEntry(new ZipEntry("../evil"));
+            out.putNextEntry(new ZipEntry("/absolute"));
+            out.putNextEntry(new ZipEntry("dir/../../evil"));
+        }
+
+        assert(CompressedInput.entryNames(archive).equals(List.of("a.json", "dir/b.txt.gz", "skipped")));
+
+        List<String> entries = new ArrayList<>();
+        CompressedInput.forEachEntry(archive, name -> !name.equals("skipped"),
+            (name, in) -> entries.add(name + "=" + new String(in.readAllBytes())));
+        assert(entries.equals(List.of("a.json=a", "dir/b.txt.gz=b")));
+    }
+
+    @Test
+    void entriesAreBeneathTheArchive() {
+        assert(CompressedInput.entryPath("data/archive.zip", "dir/b.txt.gz").equals("data/archive/dir/b.txt.gz"));
+        assert(CompressedInput.entryPath("archive.ZIP", "a.json").equals("archive/a.json"));
+    }
+}
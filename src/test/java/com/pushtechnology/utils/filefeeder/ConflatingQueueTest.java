@@ -0,0 +1,83 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ConflatingQueueTest {
+
+    @Test
+    void latestValueWinsWhileSenderIsBlocked() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, List<Object>> sent = new ConcurrentHashMap<>();
+        ConflatingQueue queue = new ConflatingQueue(1, String::hashCode, (topic, value, size, intended, onComplete) -> {
+            blocked.countDown();
+            try {
+                release.await();
+            }
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            sent.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(value);
+        });
+
+        try {
+            queue.offer("first", 0, 1, 0, null);
+            assert(blocked.await(5, TimeUnit.SECONDS));
+
+            // The sender is stuck, but offering doesn't wait
+            AtomicInteger completed = new AtomicInteger();
+            long start = System.nanoTime();
+            for(int i = 1; i <= 10_000; i++) {
+                queue.offer("topic/" + (i % 10), i, 1, 0, success -> completed.incrementAndGet());
+            }
+            assert(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assert(queue.getTopicCount() == 11);
+            // Including the value being sent
+            assert(queue.getWaiting() == 11);
+            assert(queue.getConflated() == 9990);
+            assert(completed.get() == 9990);
+
+            release.countDown();
+            queue.awaitEmpty();
+            assert(queue.getWaiting() == 0);
+            assert(sent.get("first").size() == 1);
+            for(int t = 0; t < 10; t++) {
+                List<Object> values = sent.get("topic/" + t);
+                assert(values.size() == 1);
+                assert(values.get(0).equals(t == 0 ? 10_000 : 9_990 + t));
+            }
+        }
+        finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    void valuesForATopicStayInOrder() throws InterruptedException {
+        List<Object> sent = new CopyOnWriteArrayList<>();
+        ConflatingQueue queue = new ConflatingQueue(4, topic -> 0, (topic, value, size, intended, onComplete) -> sent.add(value));
+        try {
+            for(int i = 0; i < 100_000; i++) {
+                queue.offer("topic", i, 1, 0, null);
+            }
+            queue.awaitEmpty();
+
+            assert(sent.get(sent.size() - 1).equals(99_999));
+            for(int i = 1; i < sent.size(); i++) {
+                assert((Integer) sent.get(i) > (Integer) sent.get(i - 1));
+            }
+            assert(sent.size() + queue.getConflated() == 100_000);
+        }
+        finally {
+            queue.stop();
+        }
+    }
+}
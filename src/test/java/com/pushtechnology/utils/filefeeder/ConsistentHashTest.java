@@ -0,0 +1,48 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+class ConsistentHashTest {
+
+    @Test
+    void stable() {
+        ConsistentHash<String> ring = new ConsistentHash<>(Arrays.asList("a", "b", "c"));
+        ConsistentHash<String> other = new ConsistentHash<>(Arrays.asList("a", "b", "c"));
+        for(int i = 0; i < 1000; i++) {
+            assert(ring.get("topic/" + i).equals(other.get("topic/" + i)));
+        }
+        assert(ConsistentHash.hash("foo/bar") == ConsistentHash.hash("foo/bar"));
+        assert(ConsistentHash.hash("foo/bar") != ConsistentHash.hash("foo/baz"));
+    }
+
+    @Test
+    void balanced() {
+        ConsistentHash<String> ring = new ConsistentHash<>(Arrays.asList("a", "b", "c", "d"));
+        Map<String, Integer> counts = new HashMap<>();
+        for(int i = 0; i < 100_000; i++) {
+            counts.merge(ring.get("topic/" + i), 1, Integer::sum);
+        }
+        assert(counts.size() == 4);
+        for(int count : counts.values()) {
+            assert(count > 15_000 && count < 35_000);
+        }
+    }
+
+    @Test
+    void addingTargetMovesFewTopics() {
+        ConsistentHash<String> three = new ConsistentHash<>(Arrays.asList("a", "b", "c"));
+        ConsistentHash<String> four = new ConsistentHash<>(Arrays.asList("a", "b", "c", "d"));
+        int moved = 0;
+        for(int i = 0; i < 10_000; i++) {
+            String target = four.get("topic/" + i);
+            if(!target.equals("d") && !target.equals(three.get("topic/" + i))) {
+                moved++;
+            }
+        }
+        assert(moved == 0);
+    }
+}
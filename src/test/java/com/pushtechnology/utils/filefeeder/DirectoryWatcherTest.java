@@ -0,0 +1,60 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+class DirectoryWatcherTest {
+
+    @Test
+    void pollsForNewAndModifiedFiles() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("watch");
+        Path existing = Files.write(root.resolve("existing"), "a\n".getBytes());
+        Files.write(root.resolve("unchanged"), "b\n".getBytes());
+
+        try (DirectoryWatcher watcher = new DirectoryWatcher(root, 10)) {
+            assert(watcher.isPolling());
+
+            Files.createDirectories(root.resolve("sub"));
+            Path created = Files.write(root.resolve("sub/created"), "c\n".getBytes());
+            Files.write(existing, "d\n".getBytes(), StandardOpenOption.APPEND);
+
+            List<Path> changed = watcher.take();
+            assert(changed.size() == 2);
+            assert(changed.contains(created.toAbsolutePath()));
+            assert(changed.contains(existing.toAbsolutePath()));
+        }
+    }
+
+    @Test
+    void notifiesOfNewFiles() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("watch");
+
+        try (DirectoryWatcher watcher = new DirectoryWatcher(root, 0)) {
+            Path created = Files.write(root.resolve("created"), "a\n".getBytes());
+
+            List<Path> changed = watcher.take();
+            assert(changed.contains(created.toAbsolutePath()));
+        }
+    }
+
+    @Test
+    void pollsForSingleFile() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("watch");
+        Path watched = Files.write(root.resolve("watched"), "a\n".getBytes());
+
+        try (DirectoryWatcher watcher = new DirectoryWatcher(watched, 10)) {
+            Files.createDirectories(root.resolve("sub"));
+            Files.write(root.resolve("sub/other"), "b\n".getBytes());
+            Files.write(root.resolve("other"), "c\n".getBytes());
+            Files.write(watched, "d\n".getBytes(), StandardOpenOption.APPEND);
+
+            List<Path> changed = watcher.take();
+            assert(changed.equals(List.of(watched.toAbsolutePath())));
+        }
+    }
+}
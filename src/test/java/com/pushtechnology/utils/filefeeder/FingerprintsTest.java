@@ -0,0 +1,40 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+class FingerprintsTest {
+
+    @Test
+    void detectsRepeatedValues() {
+        Fingerprints fingerprints = new Fingerprints();
+        assert(!fingerprints.unchanged("a", "one".getBytes()));
+        assert(fingerprints.unchanged("a", "one".getBytes()));
+        assert(!fingerprints.unchanged("b", "one".getBytes()));
+        assert(!fingerprints.unchanged("a", "two".getBytes()));
+        assert(!fingerprints.unchanged("a", "one".getBytes()));
+    }
+
+    @Test
+    void holdsManyTopics() {
+        Fingerprints fingerprints = new Fingerprints();
+        for(int i = 0; i < 10000; i++) {
+            assert(!fingerprints.unchanged("topic/" + i, i));
+        }
+        assert(fingerprints.size() == 10000);
+        for(int i = 0; i < 10000; i++) {
+            assert(fingerprints.unchanged("topic/" + i, i));
+        }
+    }
+
+    @Test
+    void hashCoversEveryByte() {
+        byte[] data = "0123456789abcdefghij".getBytes();
+        long hash = Fingerprints.hash(data);
+        for(int i = 0; i < data.length; i++) {
+            byte[] changed = data.clone();
+            changed[i] ^= 1;
+            assert(Fingerprints.hash(changed) != hash);
+        }
+        assert(Fingerprints.hash(new byte[0]) != Fingerprints.hash(new byte[1]));
+    }
+}
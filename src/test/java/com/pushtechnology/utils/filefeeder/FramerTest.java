@@ -0,0 +1,172 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+class FramerTest {
+
+    /**
+     * An input stream which returns at most a few bytes from each read, so
+     * that records arrive split across many reads.
+     */
+    private static InputStream trickle(byte[] data) {
+        return new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+    }
+
+    private static List<String> frame(Framer.Format format, byte[] data) throws IOException {
+        List<String> records = new ArrayList<>();
+        format.create().forEachRecord(trickle(data), "test", (record, start, end) ->
+                records.add(new String(record, StandardCharsets.UTF_8)));
+        return records;
+    }
+
+    private static List<String> frame(Framer.Format format, String data) throws IOException {
+        return frame(format, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void splitsLines() throws IOException {
+        assert(frame(Framer.Format.LINES, "one\r\ntwo\n\nthree").equals(Arrays.asList("one", "two", "", "three")));
+    }
+
+    @Test
+    void keepsLoneCarriageReturns() throws IOException {
+        assert(frame(Framer.Format.LINES, "a\rb\nc\r\n").equals(Arrays.asList("a\rb", "c")));
+    }
+
+    @Test
+    void rejectsRecordsLongerThanTheBuffer() throws IOException {
+        Framer framer = Framer.Format.LINES.create();
+        framer.maxBufferSize = 128 * 1024;
+        byte[] data = new byte[200 * 1024];
+        Arrays.fill(data, (byte) 'x');
+        data[10] = '\n';
+
+        List<String> records = new ArrayList<>();
+        try {
+            framer.forEachRecord(new ByteArrayInputStream(data), "data.txt", (record, start, end) -> records.add(new String(record)));
+            assert(false);
+        }
+        catch(IOException ex) {
+            assert(ex.getMessage().contains("offset 11 of data.txt")) : ex.getMessage();
+        }
+        assert(records.size() == 1);
+    }
+
+    @Test
+    void lineOffsetsIncludeTerminators() throws IOException {
+        List<long[]> offsets = new ArrayList<>();
+        Framer.Format.LINES.create().forEachRecord(trickle("one\r\ntwo\n\nthree".getBytes()), "test",
+                (record, start, end) -> offsets.add(new long[] {start, end}));
+        assert(offsets.size() == 4);
+        assert(offsets.get(0)[0] == 0 && offsets.get(0)[1] == 5);
+        assert(offsets.get(1)[0] == 5 && offsets.get(1)[1] == 9);
+        assert(offsets.get(3)[0] == 10 && offsets.get(3)[1] == 15);
+    }
+
+    @Test
+    void splitsCompressedLinesAcrossBuffers() throws IOException {
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for(int i = 0; i < 20000; i++) {
+            String record = "record " + i + " " + String.join("", Collections.nCopies(i % 100, "x"));
+            expected.add(record);
+            content.append(record).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(content.toString().getBytes());
+        }
+
+        List<String> records = new ArrayList<>();
+        long[] end = new long[1];
+        InputStream in = CompressedInput.inflate("records.gz", new ByteArrayInputStream(compressed.toByteArray()));
+        Framer.Format.LINES.create().forEachRecord(in, "records.gz", (record, start, recordEnd) -> {
+            records.add(new String(record));
+            end[0] = recordEnd;
+        });
+        assert(records.equals(expected));
+        assert(end[0] == content.length());
+    }
+
+    @Test
+    void splitsLengthPrefixedRecords() throws IOException {
+        byte[] large = new byte[300];
+        Arrays.fill(large, (byte) 'x');
+
+        ByteArrayOutputStream varint = new ByteArrayOutputStream();
+        varint.write(3);
+        varint.write("abc".getBytes(), 0, 3);
+        varint.write(0);
+        // 300 = 0b10_0101100
+        varint.write(0xAC);
+        varint.write(0x02);
+        varint.write(large, 0, large.length);
+        assert(frame(Framer.Format.VARINT, varint.toByteArray()).equals(Arrays.asList("abc", "", new String(large))));
+
+        ByteArrayOutputStream int32 = new ByteArrayOutputStream();
+        int32.write(new byte[] {0, 0, 1, 44}, 0, 4);
+        int32.write(large, 0, large.length);
+        int32.write(new byte[] {0, 0, 0, 2, 'h', 'i'}, 0, 6);
+        // Incomplete final record is ignored
+        int32.write(new byte[] {0, 0, 0, 9, 'x'}, 0, 5);
+        assert(frame(Framer.Format.INT32, int32.toByteArray()).equals(Arrays.asList(new String(large), "hi")));
+    }
+
+    @Test
+    void splitsJsonArrays() throws IOException {
+        String json = "[ {\"a\": [1, {\"b\": \"]}\\\"\"}]},\n  \"text, with [brackets]\", 42,true , null, [[1], [2]] ]\n";
+        assert(frame(Framer.Format.JSON, json).equals(Arrays.asList(
+                "{\"a\": [1, {\"b\": \"]}\\\"\"}]}",
+                "\"text, with [brackets]\"",
+                "42",
+                "true",
+                "null",
+                "[[1], [2]]")));
+
+        // Values one after another, as in newline-delimited JSON
+        assert(frame(Framer.Format.JSON, "{\"a\":1}\n{\"a\":2}\n").equals(Arrays.asList("{\"a\":1}", "{\"a\":2}")));
+        assert(frame(Framer.Format.JSON, "[]").isEmpty());
+    }
+
+    @Test
+    void convertsCsvRowsToJson() throws IOException {
+        String csv = "name,quote\r\n"
+                + "plain,text\r\n"
+                + "\r\n"
+                + "\"Smith, J\",\"said \"\"hi\"\"\nthen left\"\n"
+                + "extra,field,here";
+        assert(frame(Framer.Format.CSV, csv).equals(Arrays.asList(
+                "{\"name\":\"plain\",\"quote\":\"text\"}",
+                "{\"name\":\"Smith, J\",\"quote\":\"said \\\"hi\\\"\\u000athen left\"}",
+                "{\"name\":\"extra\",\"quote\":\"field\",\"3\":\"here\"}")));
+    }
+
+    @Test
+    void offsetsCoverTheInput() throws IOException {
+        byte[] json = "[1, 2,3]".getBytes(StandardCharsets.UTF_8);
+        List<long[]> offsets = new ArrayList<>();
+        Framer.Format.JSON.create().forEachRecord(trickle(json), "test", (record, start, end) -> offsets.add(new long[] {start, end}));
+        assert(offsets.size() == 3);
+        assert(offsets.get(0)[0] == 0);
+        for(int i = 1; i < offsets.size(); i++) {
+            assert(offsets.get(i)[0] == offsets.get(i - 1)[1]);
+        }
+    }
+}
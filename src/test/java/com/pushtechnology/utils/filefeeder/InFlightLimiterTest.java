@@ -0,0 +1,65 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class InFlightLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    void fixedWindow() throws InterruptedException {
+        InFlightLimiter limiter = new InFlightLimiter(2);
+        limiter.acquire();
+        limiter.acquire();
+        assert(limiter.getInFlight() == 2);
+
+        limiter.release(SLOW, true);
+        assert(limiter.getLimit() == 2);
+        assert(limiter.getInFlight() == 1);
+    }
+
+    @Test
+    void grows() throws InterruptedException {
+        InFlightLimiter limiter = new InFlightLimiter(4, 100, true, 100);
+        for(int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(FAST, false);
+        }
+        assert(limiter.getLimit() > 4);
+        assert(limiter.getLimit() <= 100);
+    }
+
+    @Test
+    void shrinksOncePerRoundTrip() throws InterruptedException {
+        InFlightLimiter limiter = new InFlightLimiter(64, 64, true, 100);
+        for(int i = 0; i < 4; i++) {
+            limiter.acquire();
+        }
+        for(int i = 0; i < 4; i++) {
+            limiter.release(SLOW, false);
+        }
+        assert(limiter.getLimit() == 32);
+    }
+
+    @Test
+    void awaitIdle() throws InterruptedException {
+        InFlightLimiter limiter = new InFlightLimiter(1);
+        limiter.acquire();
+        new Thread(() -> limiter.release(FAST, false)).start();
+        limiter.awaitIdle();
+        assert(limiter.getInFlight() == 0);
+    }
+
+    @Test
+    void awaitIdleTimesOut() throws InterruptedException {
+        InFlightLimiter limiter = new InFlightLimiter(1);
+        limiter.acquire();
+        assert(!limiter.awaitIdle(10, TimeUnit.MILLISECONDS));
+
+        new Thread(() -> limiter.release(FAST, false)).start();
+        assert(limiter.awaitIdle(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,190 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+class IngestPipelineTest {
+
+    /**
+     * Publishes each line of a file to the topic named after the file.
+     * Publishing to "bad" and decoding "invalid" throw.
+     */
+    private static class TestFeeder implements IngestPipeline.Feeder {
+        final List<String> scanned = new CopyOnWriteArrayList<>();
+        final List<String> published = new CopyOnWriteArrayList<>();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        @Override
+        public void scanned(Path path) {
+            scanned.add(path.getFileName().toString());
+        }
+
+        @Override
+        public void processFile(Path path, Main.RecordSink sink) {
+            try {
+                for (String line : Files.readAllLines(path)) {
+                    sink.accept(path.getFileName().toString(), line.getBytes(), 0, success -> {
+                        completed.incrementAndGet();
+                        if (!success) {
+                            failed.incrementAndGet();
+                        }
+                    });
+                }
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public boolean skipUnchanged(String topic, byte[] bytes) {
+            return false;
+        }
+
+        @Override
+        public Object decode(String topic, byte[] bytes) {
+            String value = new String(bytes);
+            if (value.equals("invalid")) {
+                throw new IllegalStateException("Invalid value");
+            }
+            return value;
+        }
+
+        @Override
+        public void publish(String topic, Object value, int size, long due, Consumer<Boolean> onComplete) {
+            if (topic.equals("bad")) {
+                throw new IllegalArgumentException("Invalid topic path");
+            }
+            published.add(topic + "=" + value);
+            onComplete.accept(true);
+        }
+    }
+
+    private static Path tree() throws IOException {
+        Path root = Files.createTempDirectory("ingest");
+        Files.createDirectories(root.resolve("a/b"));
+        Files.write(root.resolve("first"), "1\n2\n3\n".getBytes());
+        Files.write(root.resolve("a/bad"), "1\n2\n3\n".getBytes());
+        Files.write(root.resolve("a/b/last"), "1\ninvalid\n3\n".getBytes());
+        return root;
+    }
+
+    private static void run(IngestPipeline pipeline, Path root) throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            try {
+                pipeline.run(root);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        assert(!thread.isAlive());
+    }
+
+    @Test
+    void failedRecordsDontStopTheStages() throws IOException, InterruptedException {
+        TestFeeder feeder = new TestFeeder();
+        // One lane with room for one record, so a stage which stopped would block the others
+        run(new IngestPipeline(feeder, 2, 2, 1, 1, 1), tree());
+
+        assert(feeder.published.size() == 5);
+        assert(feeder.scanned.size() == 3);
+        assert(feeder.scanned.containsAll(List.of("first", "bad", "last")));
+        assert(feeder.published.contains("first=3"));
+        assert(feeder.published.contains("last=3"));
+        assert(!feeder.published.contains("last=invalid"));
+        // Including the records which failed
+        assert(feeder.completed.get() == 9);
+        assert(feeder.failed.get() == 3);
+    }
+
+    @Test
+    void failedRecordsDontStopVirtualThreads() throws IOException, InterruptedException {
+        TestFeeder feeder = new TestFeeder();
+        run(new IngestPipeline(feeder, 1, 1, 1, 1, 1, true), tree());
+
+        assert(feeder.published.size() == 5);
+        assert(feeder.scanned.size() == 3);
+        assert(feeder.completed.get() == 9);
+        assert(feeder.failed.get() == 3);
+    }
+
+    @Test
+    void singleFile() throws IOException, InterruptedException {
+        TestFeeder feeder = new TestFeeder();
+        run(new IngestPipeline(feeder, 1, 1, 2, 2, 4), tree().resolve("first"));
+
+        assert(feeder.published.equals(List.of("first=1", "first=2", "first=3")));
+    }
+
+    @Test
+    void batchesShareThreads() throws IOException, InterruptedException {
+        Path root = tree();
+        Set<Thread> readers = ConcurrentHashMap.newKeySet();
+        AtomicInteger read = new AtomicInteger();
+        TestFeeder feeder = new TestFeeder() {
+            @Override
+            public void processFile(Path path, Main.RecordSink sink) {
+                readers.add(Thread.currentThread());
+                super.processFile(path, sink);
+                read.incrementAndGet();
+            }
+        };
+
+        IngestPipeline pipeline = new IngestPipeline(feeder, 1, 1, 1, 1, 1);
+        pipeline.start();
+        pipeline.process(List.of(root.resolve("first")));
+        // Each batch has been read before the next
+        assert(read.get() == 1);
+        pipeline.process(List.of(root.resolve("a/b/last"), root.resolve("first")));
+        pipeline.close();
+
+        assert(readers.size() == 1);
+        assert(feeder.published.size() == 8);
+        assert(feeder.completed.get() == 9);
+    }
+
+    @Test
+    void virtualThreadsBoundOpenFiles() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("ingest");
+        for (int i = 0; i < 20; i++) {
+            Files.write(root.resolve("file" + i), "1\n".getBytes());
+        }
+
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger maxOpen = new AtomicInteger();
+        TestFeeder feeder = new TestFeeder() {
+            @Override
+            public void processFile(Path path, Main.RecordSink sink) {
+                maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                super.processFile(path, sink);
+                open.decrementAndGet();
+            }
+        };
+        run(new IngestPipeline(feeder, 1, 1, 1, 1, 1, true, 3), root);
+
+        assert(feeder.published.size() == 20);
+        assert(maxOpen.get() <= 3);
+    }
+}
@@ -0,0 +1,45 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsCoverAllValues() {
+        int last = -1;
+        for(long value : new long[] { 0, 1, 127, 128, 129, 255, 256, 1000, 1_000_000, Long.MAX_VALUE }) {
+            int index = LatencyHistogram.indexOf(value);
+            assert(index >= last);
+            assert(LatencyHistogram.highestValueAt(index) >= value);
+            last = index;
+        }
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        assert(snapshot.getCount() == 10_000);
+        assert(Math.abs(snapshot.getValueAtPercentile(50) - 5_000_000) < 5_000_000 * 0.02);
+        assert(Math.abs(snapshot.getValueAtPercentile(99) - 9_900_000) < 9_900_000 * 0.02);
+        assert(Math.abs(snapshot.getMax() - 10_000_000) < 10_000_000 * 0.02);
+
+        assert(histogram.snapshotAndReset().getCount() == 0);
+    }
+
+    @Test
+    void merge() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        LatencyHistogram.Snapshot first = histogram.snapshotAndReset();
+        histogram.record(20);
+        LatencyHistogram.Snapshot merged = first.merge(histogram.snapshotAndReset());
+
+        assert(merged.getCount() == 2);
+        assert(merged.getMax() == 20);
+    }
+}
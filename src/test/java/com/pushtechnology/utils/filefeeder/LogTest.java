@@ -0,0 +1,88 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+class LogTest {
+
+    @Test
+    void writesEveryMessageFromManyThreads() throws InterruptedException {
+        AsyncLogWriter writer = new AsyncLogWriter(16384);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        writer.setOutput(new PrintStream(out, true), new PrintStream(err, true));
+
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 4; t++) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                for(int i = 0; i < 1000; i++) {
+                    writer.write(i % 100 == 0 ? Log.Level.WARN : Log.Level.INFO, "test", thread + "/" + i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        writer.flush();
+
+        assert(writer.getDropped() == 0);
+        assert(out.toString().split("\n").length == 3960);
+        assert(err.toString().split("\n").length == 40);
+        assert(err.toString().contains(" WARN  test - 3/900\n"));
+    }
+
+    @Test
+    void dropsMessagesRatherThanWaiting() {
+        AsyncLogWriter writer = new AsyncLogWriter(2);
+        writer.setOutput(new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream()));
+        for(int i = 0; i < 100000; i++) {
+            writer.write(Log.Level.INFO, "test", "message");
+        }
+        assert(writer.getDropped() > 0);
+    }
+
+    @Test
+    void levelsAreSetPerCategory() {
+        try {
+            Log.configure("warn,verbose=debug", 0);
+            assert(Log.get("verbose").isEnabled(Log.Level.DEBUG));
+            assert(!Log.get("verbose").isEnabled(Log.Level.TRACE));
+            assert(Log.get("quiet").isEnabled(Log.Level.WARN));
+            assert(!Log.get("quiet").isEnabled(Log.Level.INFO));
+        }
+        finally {
+            Log.configure("info", 0);
+        }
+        assert(Log.get("verbose").isEnabled(Log.Level.INFO));
+        assert(!Log.get("verbose").isEnabled(Log.Level.DEBUG));
+    }
+
+    @Test
+    void limitsMessagesPerSecond() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Log.writer().setOutput(new PrintStream(out, true), new PrintStream(new ByteArrayOutputStream(), true));
+        try {
+            Log.configure("info", 5);
+            Log log = Log.get("limited");
+            for(int i = 0; i < 20; i++) {
+                log.info("message " + i);
+            }
+            Log.flush();
+        }
+        finally {
+            Log.configure("info", 0);
+            Log.writer().setOutput(System.out, System.err);
+        }
+
+        int lines = out.toString().split("\n").length;
+        // Allowing for the count starting again if the second changed
+        assert(lines >= 5 && lines <= 10);
+        assert(out.toString().contains("limited - message 0\n"));
+    }
+}
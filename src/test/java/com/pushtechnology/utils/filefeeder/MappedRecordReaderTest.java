@@ -0,0 +1,116 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class MappedRecordReaderTest {
+
+    private MappedRecordReader read(String content) throws IOException {
+        Path path = Files.createTempFile("records", ".txt");
+        path.toFile().deleteOnExit();
+        Files.write(path, content.getBytes());
+        return new MappedRecordReader(path);
+    }
+
+    @Test
+    void records() throws IOException {
+        MappedRecordReader reader = read("apple\nbanana\r\n\ncucumber\n");
+        assert(reader.size() == 4);
+        assert(new String(reader.get(0)).equals("apple"));
+        assert(new String(reader.get(1)).equals("banana"));
+        assert(new String(reader.get(2)).equals(""));
+        assert(new String(reader.get(3)).equals("cucumber"));
+        assert(reader.offset(4) == reader.length());
+    }
+
+    @Test
+    void keepsLoneCarriageReturns() throws IOException {
+        MappedRecordReader reader = read("a\rb\nc\r\n");
+        assert(reader.size() == 2);
+        assert(new String(reader.get(0)).equals("a\rb"));
+        assert(new String(reader.get(1)).equals("c"));
+    }
+
+    @Test
+    void noTrailingNewline() throws IOException {
+        MappedRecordReader reader = read("apple\nbanana");
+        assert(reader.size() == 2);
+        assert(new String(reader.get(1)).equals("banana"));
+    }
+
+    @Test
+    void tail() throws IOException {
+        Path path = Files.createTempFile("records", ".txt");
+        path.toFile().deleteOnExit();
+        Files.write(path, "apple\nban".getBytes());
+
+        MappedRecordReader reader = new MappedRecordReader(path, 0, true);
+        assert(reader.size() == 1);
+        assert(reader.offset(1) == 6);
+
+        Files.write(path, "apple\nbanana\ncherry\n".getBytes());
+        reader = new MappedRecordReader(path, reader.offset(1), true);
+        assert(reader.size() == 2);
+        assert(new String(reader.get(0)).equals("banana"));
+        assert(new String(reader.get(1)).equals("cherry"));
+        assert(reader.offset(2) == reader.length());
+    }
+
+    @Test
+    void empty() throws IOException {
+        MappedRecordReader reader = read("");
+        assert(reader.size() == 0);
+
+        ChunkSupplier supplier = new ChunkSupplier(reader);
+        assert(supplier.get() == null);
+        assert(supplier.getRandom() == null);
+    }
+
+    @Test
+    void extend() throws IOException {
+        Path path = Files.createTempFile("records", ".txt");
+        path.toFile().deleteOnExit();
+        Files.write(path, "apple\nban".getBytes());
+
+        MappedRecordReader reader = new MappedRecordReader(path, 0, true);
+        assert(reader.size() == 1);
+
+        Files.write(path, "apple\nbanana\ncherry\n".getBytes());
+        reader = new MappedRecordReader(reader);
+        assert(reader.size() == 3);
+        assert(new String(reader.get(0)).equals("apple"));
+        assert(new String(reader.get(1)).equals("banana"));
+        assert(new String(reader.get(2)).equals("cherry"));
+        assert(reader.offset(3) == reader.length());
+    }
+
+    @Test
+    void extendPartialRecord() throws IOException {
+        Path path = Files.createTempFile("records", ".txt");
+        path.toFile().deleteOnExit();
+        Files.write(path, "apple\nban".getBytes());
+
+        MappedRecordReader reader = new MappedRecordReader(path);
+        assert(reader.size() == 2);
+
+        Files.write(path, "apple\nbanana\n".getBytes());
+        reader = new MappedRecordReader(reader);
+        assert(reader.size() == 2);
+        assert(new String(reader.get(1)).equals("banana"));
+    }
+
+    @Test
+    void largeFileIsMapped() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; content.length() <= MappedRecordReader.MAP_THRESHOLD; i++) {
+            content.append("record ").append(i).append('\n');
+        }
+        MappedRecordReader reader = read(content.toString());
+        assert(new String(reader.get(0)).equals("record 0"));
+        assert(new String(reader.get(reader.size() - 1)).equals("record " + (reader.size() - 1)));
+        assert(reader.offset(reader.size()) == reader.length());
+    }
+}
@@ -0,0 +1,81 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+class OffHeapStoreTest {
+
+    private static byte[] bytes(int length, int value) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    @Test
+    void putAndGet() {
+        OffHeapStore store = new OffHeapStore(1024);
+        int a = store.register();
+        int b = store.register();
+        assert(store.put(a, bytes(100, 1)));
+        assert(store.put(b, bytes(200, 2)));
+
+        assert(Arrays.equals(store.get(a), bytes(100, 1)));
+        assert(Arrays.equals(store.get(b), bytes(200, 2)));
+        assert(store.getHits() == 2);
+        assert(store.getUsed() == 300);
+    }
+
+    @Test
+    void tooLarge() {
+        OffHeapStore store = new OffHeapStore(100);
+        assert(!store.put(store.register(), bytes(101, 1)));
+    }
+
+    @Test
+    void evictsOldest() {
+        OffHeapStore store = new OffHeapStore(1000);
+        int[] ids = new int[5];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = store.register();
+            assert(store.put(ids[i], bytes(300, i)));
+        }
+
+        // Only the last three fit
+        assert(store.get(ids[0]) == null);
+        assert(store.get(ids[1]) == null);
+        assert(Arrays.equals(store.get(ids[4]), bytes(300, 4)));
+        assert(store.getMisses() == 2);
+        assert(store.getEvictions() == 2);
+        assert(store.getUsed() <= 1000);
+    }
+
+    @Test
+    void secondChance() {
+        OffHeapStore store = new OffHeapStore(1000);
+        int a = store.register();
+        int b = store.register();
+        int c = store.register();
+        store.put(a, bytes(300, 1));
+        store.put(b, bytes(300, 2));
+
+        // Reading a means b is evicted in its place
+        store.get(a);
+        store.put(c, bytes(300, 3));
+        store.put(store.register(), bytes(300, 4));
+
+        assert(Arrays.equals(store.get(a), bytes(300, 1)));
+        assert(store.get(b) == null);
+    }
+
+    @Test
+    void replace() {
+        OffHeapStore store = new OffHeapStore(1000);
+        int a = store.register();
+        for(int i = 0; i < 20; i++) {
+            assert(store.put(a, bytes(100 + i, i)));
+            assert(Arrays.equals(store.get(a), bytes(100 + i, i)));
+        }
+        assert(store.getUsed() <= 1000);
+    }
+}
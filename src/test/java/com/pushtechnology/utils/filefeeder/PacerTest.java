@@ -0,0 +1,81 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+class PacerTest {
+
+    @Test
+    void constant() {
+        Pacer pacer = new Pacer(1000, Pacer.Profile.CONSTANT, 1);
+        long first = pacer.next();
+        long second = pacer.next();
+        long third = pacer.next();
+        assert(second - first == 1_000_000);
+        assert(third - second == 1_000_000);
+    }
+
+    @Test
+    void burst() {
+        Pacer pacer = new Pacer(1000, Pacer.Profile.BURST, 3);
+        long first = pacer.next();
+        assert(pacer.next() == first);
+        assert(pacer.next() == first);
+        assert(pacer.next() - first == 3_000_000);
+    }
+
+    @Test
+    void poissonAverage() {
+        Pacer pacer = new Pacer(1000, Pacer.Profile.POISSON, 1);
+        long first = pacer.next();
+        long last = first;
+        for(int i = 0; i < 100_000; i++) {
+            last = pacer.next();
+        }
+        double mean = (last - first) / 100_000.0;
+        assert(Math.abs(mean - 1_000_000) < 1_000_000 * 0.05);
+    }
+
+    @Test
+    void ramp() {
+        // From 1000/sec to 3000/sec over a second, so about 2000 updates in that second
+        Pacer pacer = new Pacer(1000, 3000, 1_000_000_000L, Pacer.Profile.CONSTANT, 1);
+        long first = pacer.next();
+        assert(pacer.next() - first == 1_000_000);
+        int count = 2;
+        long last;
+        while((last = pacer.next()) - first < 1_000_000_000L) {
+            count++;
+        }
+        assert(Math.abs(count - 2000) < 20) : count;
+        assert(pacer.next() - last == 333_333);
+    }
+
+    @Test
+    void sleepUntil() {
+        long deadline = System.nanoTime() + 2_000_000;
+        Pacer.sleepUntil(deadline);
+        assert(System.nanoTime() >= deadline);
+    }
+
+    @Test
+    void invalidRate() {
+        assert(isInvalidRate(0, 0));
+        assert(isInvalidRate(-1, -1));
+        assert(isInvalidRate(Double.NaN, Double.NaN));
+        assert(isInvalidRate(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY));
+        assert(isInvalidRate(1000, -1));
+        // A ramp may start or end at zero
+        assert(!isInvalidRate(0, 1000));
+        assert(!isInvalidRate(1000, 0));
+    }
+
+    private static boolean isInvalidRate(double rate, double endRate) {
+        try {
+            new Pacer(rate, endRate, 1_000_000_000L, Pacer.Profile.CONSTANT, 1);
+            return false;
+        }
+        catch(IllegalArgumentException ex) {
+            return true;
+        }
+    }
+}
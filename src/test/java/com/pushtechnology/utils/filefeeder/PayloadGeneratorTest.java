@@ -0,0 +1,113 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+class PayloadGeneratorTest {
+
+    private static final String TEMPLATE =
+            "{\"symbol\": \"ABC12\", \"bid\": 101.25, \"size\": -300, \"open\": true, \"note\": \"a\\\"b\", \"exp\": 1e5, \"list\": [1, 2.0]}";
+
+    // The template with strings, numbers and booleans replaced by placeholders
+    private static String shape(String json) {
+        return json.replaceAll("\"(\\\\.|[^\"\\\\])*\"", "S")
+                .replaceAll("-?[0-9]+(\\.[0-9]+)?([eE][0-9]+)?", "N")
+                .replaceAll("true|false", "B");
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void findsFieldsWhichCanChange() {
+        PayloadGenerator generator = new PayloadGenerator(TEMPLATE.getBytes(), 1, 0, 1);
+        assert(generator.isJson());
+        // "ABC12", 101.25, -300, true, 1 and 2.0; not keys, escaped strings or exponents
+        assert(generator.getFieldCount() == 6);
+    }
+
+    @Test
+    void valuesKeepTheTemplateShape() {
+        PayloadGenerator generator = new PayloadGenerator(TEMPLATE.getBytes(), 3, 0, 2);
+        Set<String> values = new HashSet<>();
+        for(int i = 0; i < 1000; i++) {
+            String value = text(generator.next());
+            assert(shape(value).equals(shape(TEMPLATE))) : value;
+            assert(value.contains("\"note\": \"a\\\"b\"") && value.contains("\"exp\": 1e5"));
+            assert(value.matches(".*\"bid\": -?[0-9]+\\.[0-9]{2},.*")) : value;
+            assert(value.matches(".*\"symbol\": \"[A-Z]{3}[0-9]{2}\".*")) : value;
+            values.add(value);
+        }
+        assert(values.size() > 900);
+    }
+
+    @Test
+    void numbersTakeSmallSteps() {
+        PayloadGenerator generator = new PayloadGenerator("[1000.0]".getBytes(), 1, 0, 3);
+        double previous = 1000.0;
+        for(int i = 0; i < 100; i++) {
+            String value = text(generator.next());
+            double number = Double.parseDouble(value.substring(1, value.length() - 1));
+            assert(number != previous);
+            assert(Math.abs(number - previous) < 100) : value;
+            previous = number;
+        }
+    }
+
+    @Test
+    void sameSeedGivesSameValues() {
+        PayloadGenerator a = new PayloadGenerator(TEMPLATE.getBytes(), 2, 0, 42);
+        PayloadGenerator b = new PayloadGenerator(TEMPLATE.getBytes(), 2, 0, 42);
+        for(int i = 0; i < 100; i++) {
+            assert(text(a.next()).equals(text(b.next())));
+        }
+    }
+
+    @Test
+    void padsJsonObjects() {
+        PayloadGenerator generator = new PayloadGenerator("{\"a\": 1}".getBytes(), 1, 1000, 4);
+        String value = text(generator.next());
+        assert(value.length() == 1000) : value.length();
+        assert(value.matches("\\{\"a\": -?[0-9]+,\"padding\":\"[a-z]+\"}")) : value;
+
+        value = text(new PayloadGenerator("{ }".getBytes(), 1, 100, 4).next());
+        assert(value.matches("\\{ \"padding\":\"[a-z]+\"}")) : value;
+
+        value = text(new PayloadGenerator("{\"a\": 1}\n".getBytes(), 1, 100, 4).next());
+        assert(value.matches("\\{\"a\": -?[0-9]+,\"padding\":\"[a-z]+\"}\n")) : value;
+    }
+
+    @Test
+    void onlyPadsObjects() {
+        // Fields follow the object's closing brace, so padding it would move them
+        String template = "[{\"a\": 1}, 2, true]";
+        PayloadGenerator generator = new PayloadGenerator(template.getBytes(), 3, 1000, 4);
+        for (int i = 0; i < 100; i++) {
+            String value = text(generator.next());
+            assert(shape(value).equals(shape(template))) : value;
+        }
+    }
+
+    @Test
+    void resizesBinaryTemplates() {
+        byte[] template = {'a', 'B', '7', 0, (byte) 0xFF};
+        PayloadGenerator generator = new PayloadGenerator(template, 2, 12, 5);
+        assert(!generator.isJson());
+        assert(generator.getFieldCount() == 8);
+        for(int i = 0; i < 100; i++) {
+            byte[] value = generator.next();
+            assert(value.length == 12);
+            for(int j = 0; j < value.length; j += template.length) {
+                assert(value[j] >= 'a' && value[j] <= 'z');
+                assert(value[j + 1] >= 'A' && value[j + 1] <= 'Z');
+                assert(j + 2 >= value.length || (value[j + 2] >= '0' && value[j + 2] <= '9'));
+                assert(j + 3 >= value.length || value[j + 3] == 0);
+            }
+        }
+        assert(new PayloadGenerator(template, 1, 3, 5).next().length == 3);
+    }
+}
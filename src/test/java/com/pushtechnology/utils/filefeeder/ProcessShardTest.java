@@ -0,0 +1,58 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+class ProcessShardTest {
+
+    private static boolean isInvalid(String spec) {
+        try {
+            ProcessShard.parse(spec);
+            return false;
+        }
+        catch(IllegalArgumentException ex) {
+            return true;
+        }
+    }
+
+    @Test
+    void parses() {
+        ProcessShard shard = ProcessShard.parse("2/5");
+        assert(shard.getIndex() == 2 && shard.getCount() == 5);
+        assert(shard.toString().equals("2/5"));
+        assert(isInvalid("5/5"));
+        assert(isInvalid("-1/5"));
+        assert(isInvalid("0/0"));
+        assert(isInvalid("1"));
+        assert(isInvalid("a/b"));
+    }
+
+    @Test
+    void everyTopicHasOneOwner() {
+        ProcessShard[] shards = new ProcessShard[4];
+        for(int i = 0; i < shards.length; i++) {
+            shards[i] = new ProcessShard(i, shards.length);
+        }
+        int[] counts = new int[shards.length];
+        for(int t = 0; t < 10_000; t++) {
+            int owners = 0;
+            for(int i = 0; i < shards.length; i++) {
+                if(shards[i].owns("dir/topic" + t + ".json")) {
+                    owners++;
+                    counts[i]++;
+                }
+            }
+            assert(owners == 1);
+        }
+        for(int count : counts) {
+            assert(count > 1500 && count < 3500) : count;
+        }
+    }
+
+    @Test
+    void singleShardOwnsEverything() {
+        ProcessShard shard = new ProcessShard(0, 1);
+        for(int t = 0; t < 100; t++) {
+            assert(shard.owns("topic" + t));
+        }
+    }
+}
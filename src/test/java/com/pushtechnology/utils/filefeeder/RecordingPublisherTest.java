@@ -0,0 +1,45 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class RecordingPublisherTest {
+
+    @Test
+    void keepsTheMostRecentUpdates() {
+        RecordingPublisher publisher = new RecordingPublisher(3);
+        for (int i = 0; i < 10; i++) {
+            assert(publisher.set("topic", i).isDone());
+        }
+
+        List<RecordingPublisher.Update> updates = publisher.getUpdates();
+        assert(updates.size() == 3);
+        assert(updates.get(0).value.equals(7));
+        assert(updates.get(2).value.equals(9));
+        assert(publisher.getUpdateCount() == 10);
+    }
+
+    @Test
+    void countsWithoutKeeping() {
+        RecordingPublisher publisher = new RecordingPublisher(0);
+        publisher.set("topic", "value");
+
+        assert(publisher.getUpdates().isEmpty());
+        assert(publisher.getUpdateCount() == 1);
+    }
+
+    @Test
+    void keepsTheMostRecentAddTopicRequests() {
+        RecordingPublisher publisher = new RecordingPublisher(3);
+        for (int i = 0; i < 10; i++) {
+            assert(publisher.addTopic("topic" + i).isDone());
+        }
+        publisher.addTopic("topic0");
+
+        List<String> requests = publisher.getAddTopicRequests();
+        assert(requests.equals(List.of("topic8", "topic9", "topic0")));
+        assert(publisher.getAddTopicCount() == 11);
+        assert(publisher.getTopics().size() == 10);
+    }
+}
@@ -0,0 +1,63 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class ReplayClockTest {
+
+    @Test
+    void prefix() {
+        ReplayClock clock = new ReplayClock("prefix", TimeUnit.MILLISECONDS, 1);
+        byte[] record = "1500 {\"a\":1}".getBytes();
+        assert(clock.timestamp(record) == 1_500_000_000L);
+        assert(new String(clock.strip(record, clock.timestamp(record))).equals("{\"a\":1}"));
+
+        assert(clock.timestamp("1970-01-01T00:00:02Z|x".getBytes()) == 2_000_000_000L);
+        assert(clock.timestamp("x".getBytes()) == ReplayClock.NONE);
+    }
+
+    @Test
+    void recordWithoutTimestampIsNotStripped() {
+        ReplayClock clock = new ReplayClock("prefix", TimeUnit.MILLISECONDS, 1);
+        byte[] record = "{\"a\": 1}".getBytes();
+        assert(clock.timestamp(record) == ReplayClock.NONE);
+        assert(clock.strip(record, clock.timestamp(record)) == record);
+    }
+
+    @Test
+    void field() {
+        ReplayClock clock = new ReplayClock("ts", TimeUnit.SECONDS, 1);
+        byte[] record = "{\"a\":1, \"ts\": 2.5}".getBytes();
+        assert(clock.timestamp(record) == 2_500_000_000L);
+        assert(clock.strip(record, clock.timestamp(record)) == record);
+
+        assert(clock.timestamp("{\"ts\":\"1970-01-01T01:00:00+01:00\"}".getBytes()) == 0);
+        assert(clock.timestamp("{\"a\":1}".getBytes()) == ReplayClock.NONE);
+    }
+
+    @Test
+    void speed() {
+        ReplayClock clock = new ReplayClock("prefix", TimeUnit.MILLISECONDS, 10);
+        long first = clock.due(1_000_000_000L);
+        long second = clock.due(2_000_000_000L);
+        assert(second - first == 100_000_000L);
+
+        ReplayClock max = new ReplayClock("prefix", TimeUnit.MILLISECONDS, Double.POSITIVE_INFINITY);
+        assert(max.due(1_000_000_000L) == 0);
+
+        assert(isInvalidSpeed(0));
+        assert(isInvalidSpeed(-1));
+        assert(isInvalidSpeed(Double.NaN));
+    }
+
+    private static boolean isInvalidSpeed(double speed) {
+        try {
+            new ReplayClock("prefix", TimeUnit.MILLISECONDS, speed);
+            return false;
+        }
+        catch(IllegalArgumentException ex) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+class ScenarioTest {
+
+    private static final String SCENARIO = "{\"phases\": [\n"
+            + "  {\"name\": \"warm-up\", \"duration\": \"30s\", \"rate\": 1000},\n"
+            + "  {\"name\": \"ramp\", \"duration\": 60, \"rate\": 1000, \"torate\": 20000, \"inflight\": 500},\n"
+            + "  {\"name\": \"spike\", \"duration\": \"500ms\", \"rate\": 1e5, \"profile\": \"burst\", \"topics\": [\"prices/**\", \"news/*\"]},\n"
+            + "  {\"duration\": \"1m\", \"rate\": 0},\n"
+            + "  {\"name\": \"flat out\", \"duration\": \"1s\", \"topics\": \"a/b\"}\n"
+            + "]}";
+
+    private static boolean isInvalid(String json) {
+        try {
+            Scenario.parse(json);
+            return false;
+        }
+        catch(IllegalArgumentException ex) {
+            return true;
+        }
+    }
+
+    @Test
+    void readsJson() {
+        Object value = JsonReader.parse("{\"a\": [1, -2.5e1, \"x\\\"\\u0041\"], \"b\": {\"c\": true, \"d\": null}, \"e\": {}}");
+        Map<?, ?> object = (Map<?, ?>) value;
+        List<?> a = (List<?>) object.get("a");
+        assert(a.get(0).equals(1.0) && a.get(1).equals(-25.0) && a.get(2).equals("x\"A"));
+        Map<?, ?> b = (Map<?, ?>) object.get("b");
+        assert(b.get("c").equals(Boolean.TRUE) && b.containsKey("d") && b.get("d") == null);
+        assert(((Map<?, ?>) object.get("e")).isEmpty());
+    }
+
+    @Test
+    void parsesPhases() {
+        List<Scenario.Phase> phases = Scenario.parse(SCENARIO).getPhases();
+        assert(phases.size() == 5);
+
+        Scenario.Phase warmUp = phases.get(0);
+        assert(warmUp.name.equals("warm-up") && warmUp.durationNanos == 30_000_000_000L);
+        assert(warmUp.rate == 1000 && warmUp.toRate == 1000 && warmUp.inFlight == 0);
+        assert(warmUp.profile == Pacer.Profile.CONSTANT);
+
+        Scenario.Phase ramp = phases.get(1);
+        assert(ramp.durationNanos == 60_000_000_000L && ramp.toRate == 20000 && ramp.inFlight == 500);
+
+        Scenario.Phase spike = phases.get(2);
+        assert(spike.durationNanos == 500_000_000L && spike.profile == Pacer.Profile.BURST);
+        assert(spike.includes("prices/a/b") && spike.includes("news/x") && !spike.includes("news/x/y"));
+        assert(warmUp.includes("anything/at/all"));
+
+        Scenario.Phase drain = phases.get(3);
+        assert(drain.name.equals("phase 4") && drain.isIdle() && drain.createPacer() == null);
+
+        Scenario.Phase flatOut = phases.get(4);
+        assert(Double.isNaN(flatOut.rate) && !flatOut.isIdle() && flatOut.createPacer() == null);
+        assert(flatOut.includes("a/b") && !flatOut.includes("a/c"));
+    }
+
+    @Test
+    void rejectsInvalidScenarios() {
+        assert(isInvalid("{\"phases\": []}"));
+        assert(isInvalid("{\"phases\": [{\"rate\": 10}]}"));
+        assert(isInvalid("{\"phases\": [{\"duration\": \"1s\", \"rate\": \"fast\"}]}"));
+        assert(isInvalid("{\"phases\": [{\"duration\": \"1s\", \"torate\": 10}]}"));
+        assert(isInvalid("{\"phases\": [{\"duration\": \"1s\", \"rate\": -1}]}"));
+        assert(isInvalid("{\"phases\": [{\"duration\": \"1s\", \"profile\": \"wobbly\"}]}"));
+        assert(isInvalid("{\"phases\": [{\"duration\": \"1s\"}"));
+        assert(isInvalid("{\"phases\": [{\"duration\": \"soon\"}]}"));
+    }
+}
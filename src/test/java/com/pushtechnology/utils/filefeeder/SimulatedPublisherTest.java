@@ -0,0 +1,24 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+class SimulatedPublisherTest {
+
+    @Test
+    void acksAreDelayedAndBounded() throws Exception {
+        SimulatedPublisher publisher = new SimulatedPublisher(20000, 1);
+        publisher.connect();
+        try {
+            long start = System.nanoTime();
+            var first = publisher.set("a", "x");
+            var second = publisher.set("a", "y");
+
+            assert(second.isCompletedExceptionally());
+            first.get();
+            assert(System.nanoTime() - start >= 20_000_000L);
+        }
+        finally {
+            publisher.close();
+        }
+    }
+}
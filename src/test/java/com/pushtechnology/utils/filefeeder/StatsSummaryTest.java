@@ -0,0 +1,64 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+class StatsSummaryTest {
+
+    private static StatsSummary summary(String shard, long start, long end, long updates, long firstLatency) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long i = 0; i < updates; i++) {
+            histogram.record(firstLatency + i * 1000);
+        }
+        return new StatsSummary(shard, "host", start, end, updates, updates * 10, 1, 2, histogram.snapshotAndReset());
+    }
+
+    @Test
+    void writesAndReads() throws IOException {
+        StatsSummary summary = summary("1/4", 1000, 11000, 5000, 1000);
+        Path file = Files.createTempFile("summary", ".json");
+        try {
+            summary.write(file);
+            StatsSummary read = StatsSummary.read(file);
+            assert(read.name.equals("1/4") && read.host.equals("host"));
+            assert(read.start == 1000 && read.end == 11000);
+            assert(read.updates == 5000 && read.bytes == 50000 && read.errors == 1 && read.skipped == 2);
+            assert(read.getRate() == 500);
+            assert(read.latency.getCount() == 5000);
+            assert(read.latency.getValueAtPercentile(99) == summary.latency.getValueAtPercentile(99));
+            assert(read.latency.getMax() == summary.latency.getMax());
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void mergesHistogramsRatherThanPercentiles() {
+        // A fast process with many updates, and a slow one with few
+        StatsSummary fast = summary("0/2", 0, 10_000, 9000, 1_000);
+        StatsSummary slow = summary("1/2", 5_000, 10_000, 1000, 100_000_000);
+        StatsSummary total = StatsSummary.merge(Arrays.asList(fast, slow));
+
+        assert(total.updates == 10_000 && total.errors == 2);
+        assert(total.start == 0 && total.end == 10_000);
+        assert(total.getRate() == 1000);
+        assert(total.latency.getCount() == 10_000);
+        // The 99th percentile is one of the slow process's updates
+        assert(total.latency.getValueAtPercentile(99) >= 100_000_000);
+        assert(total.latency.getValueAtPercentile(50) < 10_000_000);
+        assert(StatsSummary.checkShards(Arrays.asList(fast, slow)) == null);
+    }
+
+    @Test
+    void reportsMissingShards() {
+        StatsSummary first = summary("0/3", 0, 1000, 1, 1);
+        StatsSummary third = summary("2/3", 0, 1000, 1, 1);
+        String problem = StatsSummary.checkShards(Arrays.asList(first, third, third));
+        assert(problem.equals("missing shards [1/3], repeated shards [2/3]")) : problem;
+    }
+}
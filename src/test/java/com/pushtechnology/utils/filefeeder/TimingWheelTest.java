@@ -0,0 +1,55 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+class TimingWheelTest {
+
+    @Test
+    void firesEachTimerAtItsOwnInterval() throws InterruptedException {
+        // Fewer buckets than ticks in the slow interval, so it has to wait for later turns
+        TimingWheel<String> wheel = new TimingWheel<>(TimeUnit.MILLISECONDS.toNanos(1), 16);
+        Map<String, Integer> counts = new ConcurrentHashMap<>();
+        wheel.schedule("fast", TimeUnit.MILLISECONDS.toNanos(5));
+        wheel.schedule("slow", TimeUnit.MILLISECONDS.toNanos(100));
+        wheel.schedule("once", TimeUnit.MILLISECONDS.toNanos(5));
+
+        Thread thread = new Thread(() -> wheel.run(item -> {
+            counts.merge(item, 1, Integer::sum);
+            return !item.equals("once");
+        }));
+        thread.start();
+        Thread.sleep(500);
+        wheel.stop();
+        thread.join();
+
+        assert(counts.get("fast") > 50 && counts.get("fast") <= 100);
+        assert(counts.get("slow") >= 3 && counts.get("slow") <= 5);
+        assert(counts.get("once") == 1);
+        assert(wheel.size() == 2);
+    }
+
+    @Test
+    void roundsWheelSizeUpToPowerOfTwo() throws InterruptedException {
+        TimingWheel<Integer> wheel = new TimingWheel<>(TimeUnit.MILLISECONDS.toNanos(1), 10);
+        Map<Integer, Integer> counts = new ConcurrentHashMap<>();
+        for(int i = 0; i < 1000; i++) {
+            wheel.schedule(i, TimeUnit.MILLISECONDS.toNanos(20));
+        }
+
+        Thread thread = new Thread(() -> wheel.run(item -> {
+            counts.merge(item, 1, Integer::sum);
+            return true;
+        }));
+        thread.start();
+        Thread.sleep(200);
+        wheel.stop();
+        thread.join();
+
+        assert(counts.size() == 1000);
+        assert(counts.values().stream().allMatch(count -> count >= 5 && count <= 11));
+    }
+}
@@ -0,0 +1,114 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+class TopicFeederTest {
+
+    private static Thread start(TopicFeeder feeder) {
+        return Thread.ofVirtual().start(feeder);
+    }
+
+    private static void awaitCount(AtomicInteger count, int expected) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count.get() < expected && System.nanoTime() - end < 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void waitsForEachAcknowledgement() throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger sent = new AtomicInteger();
+        AtomicReference<Consumer<Boolean>> pending = new AtomicReference<>();
+        Thread thread = start(new TopicFeeder("topic", 0, onComplete -> {
+            sent.incrementAndGet();
+            pending.set(onComplete);
+        }, running::get));
+
+        awaitCount(sent, 1);
+        Thread.sleep(200);
+        assert(sent.get() == 1);
+
+        // A failed update is acknowledged too
+        pending.get().accept(false);
+        awaitCount(sent, 2);
+        Thread.sleep(200);
+        assert(sent.get() == 2);
+
+        running.set(false);
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        assert(!thread.isAlive());
+    }
+
+    @Test
+    void stopsWhileWaiting() throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger sent = new AtomicInteger();
+        // Never acknowledged
+        Thread awaitingAck = start(new TopicFeeder("a", 0, onComplete -> sent.incrementAndGet(), running::get));
+        // Not due for an hour
+        Thread awaitingInterval = start(new TopicFeeder("b", TimeUnit.HOURS.toNanos(1),
+            onComplete -> sent.incrementAndGet(), running::get));
+        awaitCount(sent, 1);
+
+        running.set(false);
+        awaitingAck.join(TimeUnit.SECONDS.toMillis(5));
+        awaitingInterval.join(TimeUnit.SECONDS.toMillis(5));
+        assert(!awaitingAck.isAlive());
+        assert(!awaitingInterval.isAlive());
+        assert(sent.get() == 1);
+    }
+
+    @Test
+    void globalWindowLimitsUpdatesAcrossShards() throws InterruptedException {
+        InFlightLimiter global = new InFlightLimiter(4);
+        List<InFlightLimiter> shards = List.of(new InFlightLimiter(10), new InFlightLimiter(10), new InFlightLimiter(10));
+        AtomicInteger outstanding = new AtomicInteger();
+        AtomicInteger maxOutstanding = new AtomicInteger();
+        AtomicInteger acked = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ScheduledExecutorService server = Executors.newSingleThreadScheduledExecutor();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            InFlightLimiter shard = shards.get(i % shards.size());
+            threads.add(start(new TopicFeeder("topic" + i, 0, onComplete -> {
+                try {
+                    InFlightLimiter.acquire(global, shard);
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                maxOutstanding.accumulateAndGet(outstanding.incrementAndGet(), Math::max);
+                server.schedule(() -> {
+                    outstanding.decrementAndGet();
+                    InFlightLimiter.release(global, shard, 0, false);
+                    acked.incrementAndGet();
+                    onComplete.accept(true);
+                }, 1, TimeUnit.MILLISECONDS);
+            }, running::get)));
+        }
+
+        awaitCount(acked, 200);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            assert(!thread.isAlive());
+        }
+        server.shutdown();
+
+        assert(acked.get() >= 200);
+        assert(maxOutstanding.get() == 4);
+    }
+}
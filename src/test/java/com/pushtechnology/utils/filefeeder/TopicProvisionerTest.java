@@ -0,0 +1,60 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class TopicProvisionerTest {
+
+    @Test
+    void requestsEachTopicOnce() throws Exception {
+        RecordingPublisher publisher = new RecordingPublisher();
+        TopicProvisioner provisioner = new TopicProvisioner(publisher, 2);
+
+        provisioner.provision("a").get();
+        provisioner.provision("b").get();
+        provisioner.provision("a").get();
+        provisioner.await();
+
+        assert(publisher.getAddTopicRequests().size() == 2);
+        assert(provisioner.getCreated() == 2);
+        assert(provisioner.size() == 2);
+    }
+
+    @Test
+    void countsExistingTopics() throws Exception {
+        RecordingPublisher publisher = new RecordingPublisher();
+        publisher.addTopic("a");
+        TopicProvisioner provisioner = new TopicProvisioner(publisher, 2);
+
+        provisioner.provision("a").get();
+
+        assert(provisioner.getCreated() == 0);
+        assert(provisioner.getExisting() == 1);
+    }
+
+    @Test
+    void releasesWindowWhenAddTopicThrows() throws Exception {
+        RecordingPublisher publisher = new RecordingPublisher() {
+            @Override
+            public CompletableFuture<Boolean> addTopic(String topic) {
+                if (topic.startsWith("bad")) {
+                    throw new IllegalArgumentException("Invalid topic path: " + topic);
+                }
+                return super.addTopic(topic);
+            }
+        };
+        TopicProvisioner provisioner = new TopicProvisioner(publisher, 1);
+
+        // Fails straight away, rather than leaving createTopic() waiting
+        assert(provisioner.provision("bad/1").isCompletedExceptionally());
+        assert(provisioner.provision("bad/1").isCompletedExceptionally());
+
+        // The window of one is still free
+        provisioner.provision("good").get(5, TimeUnit.SECONDS);
+        provisioner.await();
+        assert(provisioner.getFailed() == 1);
+        assert(provisioner.getCreated() == 1);
+    }
+}
@@ -4,7 +4,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 class TreeTest {
 
@@ -46,7 +49,7 @@ class TreeTest {
     @org.junit.jupiter.api.Test
     void getSiblings() {
         System.out.println("Siblings of foo/bar/baz");
-        LinkedList<Tree<String>.TreeNode<String>> siblings = tree.getSiblings("foo/bar/baz");
+        List<Tree<String>.TreeNode<String>> siblings = tree.getSiblings("foo/bar/baz");
         for(var s : siblings) {
             System.out.println("" + s.name + " = " + s.data);
         }
@@ -55,7 +58,7 @@ class TreeTest {
     @Test
     void getNodesWithData() {
         System.out.println("Nodes with data");
-        LinkedList<Tree<String>.TreeNode<String>> nodesWithData = tree.getNodesWithData();
+        List<Tree<String>.TreeNode<String>> nodesWithData = tree.getNodesWithData();
         for(var n : nodesWithData) {
             System.out.println(n.name + " => " + n.data);
         }
@@ -65,7 +68,7 @@ class TreeTest {
     void shuffleTest() {
         System.out.println("Shuffle nodes with data");
         System.out.println("Before");
-        LinkedList<Tree<String>.TreeNode<String>> nodesWithData = tree.getNodesWithData();
+        List<Tree<String>.TreeNode<String>> nodesWithData = tree.getNodesWithData();
         for(var n : nodesWithData) {
             System.out.println(n.name + " => " + n.data);
         }
@@ -79,4 +82,70 @@ class TreeTest {
         tree.debug();
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void getFullNameIsCached() {
+        Tree<String>.TreeNode<String> node = tree.get("foo/bar/baz");
+        assert(tree.getFullName(node).equals("foo/bar/baz"));
+        assert(tree.getFullName(node) == tree.getFullName(node));
+        assert(tree.getFullName(tree.get("foo")).equals("foo"));
+    }
+
+    @Test
+    void getMissing() {
+        assert(tree.get("foo/nothing") == null);
+        assert(tree.get("foo/bar/baz/deeper") == null);
+        assert(tree.get("") == null);
+    }
+
+    @Test
+    void nodesWithDataTracksRemoval() {
+        assert(tree.size() == 3);
+        assert(tree.getNodesWithData().size() == 3);
+
+        tree.remove("foo/bar/baz");
+        assert(tree.size() == 2);
+
+        // Removing a node removes everything below it
+        tree.remove("foo/bar");
+        assert(tree.size() == 0);
+        assert(tree.getNodesWithData().isEmpty());
+    }
+
+    @Test
+    void getRandomSibling() {
+        Random random = new Random(1);
+        tree.add("foo/bar/quux", "durian");
+        Tree<String>.TreeNode<String> baz = tree.get("foo/bar/baz");
+
+        Set<String> seen = new HashSet<>();
+        for(int i = 0; i < 100; i++) {
+            Tree<String>.TreeNode<String> sibling = tree.getRandomSibling(baz, random);
+            assert(sibling != baz);
+            seen.add(sibling.name);
+        }
+        assert(seen.size() == 2);
+        assert(seen.contains("qux") && seen.contains("quux"));
+
+        // Only child with data
+        assert(tree.getRandomSibling(tree.get("foo/bar"), random) == null);
+
+        // Siblings without data are not chosen
+        tree.add("foo/bar/empty", null);
+        tree.remove("foo/bar/qux");
+        tree.remove("foo/bar/quux");
+        assert(tree.getRandomSibling(baz, random) == null);
+    }
+
+    @Test
+    void largeTree() {
+        Tree<Integer> large = new Tree<>();
+        for(int i = 0; i < 100_000; i++) {
+            large.add("a/" + (i % 100) + "/" + i, i);
+        }
+        assert(large.size() == 100_000);
+        assert(large.get("a/42/12342").data == 12342);
+        assert(large.getFullName(large.get("a/42/12342")).equals("a/42/12342"));
+        assert(large.getSiblings("a/42/12342").size() == 999);
+    }
+}
@@ -0,0 +1,45 @@
+package com.pushtechnology.utils.filefeeder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+class UpdateScheduleTest {
+
+    @Test
+    void firstMatchingRuleApplies() {
+        UpdateSchedule schedule = new UpdateSchedule(Arrays.asList("prices/*/fx=10", "prices/**=2s", "news/?=500us"));
+        assert(schedule.intervalNanos("prices/eur/fx") == 10_000_000L);
+        assert(schedule.intervalNanos("prices/eur/gbp/fx") == 2_000_000_000L);
+        assert(schedule.intervalNanos("prices/eur") == 2_000_000_000L);
+        assert(schedule.intervalNanos("news/a") == 500_000L);
+        assert(schedule.intervalNanos("news/ab") == -1);
+        assert(schedule.intervalNanos("other") == -1);
+    }
+
+    @Test
+    void patternsAreLiteralApartFromWildcards() {
+        UpdateSchedule schedule = new UpdateSchedule(Arrays.asList("a.b(c)/*=1m"));
+        assert(schedule.intervalNanos("a.b(c)/d") == 60_000_000_000L);
+        assert(schedule.intervalNanos("axb(c)/d") == -1);
+    }
+
+    private static boolean isInvalid(String rule) {
+        try {
+            new UpdateSchedule(Arrays.asList(rule));
+            return false;
+        }
+        catch(IllegalArgumentException ex) {
+            return true;
+        }
+    }
+
+    @Test
+    void rejectsInvalidRules() {
+        assert(isInvalid("prices"));
+        assert(isInvalid("prices=fast"));
+        assert(isInvalid("prices=0"));
+        assert(isInvalid("prices=10h"));
+        assert(!isInvalid("prices=10"));
+    }
+}